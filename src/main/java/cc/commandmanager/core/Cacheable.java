@@ -0,0 +1,26 @@
+package cc.commandmanager.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a deterministic {@linkplain Command} implementation whose results can be cached. The command must not depend on
+ * anything but the values bound to the declared input keys. A {@linkplain CommandManager} with a
+ * {@linkplain ResultCache} will bind the values the command bound to the {@linkplain Context} during a previous
+ * successful execution with the same input values instead of executing it again, see
+ * {@linkplain CommandManager.CommandManagerBuilder#resultCache(ResultCache)}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+
+	/**
+	 * @return keys of the {@linkplain Context} values the command reads
+	 */
+	String[] inputs();
+
+}
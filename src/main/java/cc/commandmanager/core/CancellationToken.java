@@ -0,0 +1,72 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.CancellationException;
+
+import javax.annotation.Nullable;
+
+import net.sf.qualitycheck.Check;
+
+/**
+ * Signals a running {@linkplain Command} that it should stop, e.g. because its {@linkplain Timeout} expired.
+ * Cancellation is cooperative: long-running commands should regularly poll {@linkplain #isCancellationRequested()}
+ * and return as soon as possible once it returns true. The thread executing a cancelled command will be interrupted
+ * as well.
+ * <p>
+ * A command obtains its token by calling {@linkplain #current()} from the thread it is executed in.
+ */
+public final class CancellationToken {
+
+	private static final CancellationToken NONE = new CancellationToken();
+	private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+
+	private volatile boolean cancellationRequested;
+
+	CancellationToken() {
+	}
+
+	/**
+	 * @return the token of the {@linkplain Command} executed by the current thread. If the current thread does not
+	 *         execute a command with a timeout, a token will be returned that is never cancelled.
+	 */
+	public static CancellationToken current() {
+		CancellationToken token = CURRENT.get();
+		return token == null ? NONE : token;
+	}
+
+	/**
+	 * Make the given token the {@linkplain #current()} token of the current thread.
+	 *
+	 * @param token
+	 *            to use, or {@code null} to remove the current token
+	 */
+	static void setCurrent(@Nullable CancellationToken token) {
+		if (token == null) {
+			CURRENT.remove();
+		} else {
+			CURRENT.set(token);
+		}
+	}
+
+	/**
+	 * @return whether the command should stop
+	 */
+	public boolean isCancellationRequested() {
+		return cancellationRequested;
+	}
+
+	/**
+	 * @throws CancellationException
+	 *             if the command should stop
+	 */
+	public void throwIfCancellationRequested() {
+		if (cancellationRequested) {
+			throw new CancellationException("Command execution has been cancelled");
+		}
+	}
+
+	void cancel() {
+		Check.stateIsTrue(this != NONE, "The default token must not be cancelled");
+		cancellationRequested = true;
+	}
+
+}
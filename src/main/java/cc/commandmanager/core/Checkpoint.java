@@ -0,0 +1,135 @@
+package cc.commandmanager.core;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Snapshot of a running execution which allows to resume it later on, see {@linkplain CommandManager#resume(Context)}.
+ * A checkpoint consists of
+ * <ul>
+ * <li>the names of all commands of the execution,
+ * <li>the names of the commands that completed without {@linkplain ResultState.Failure} and
+ * <li>the serializable {@linkplain Context} bindings present before the execution started together with those bound by
+ * completed commands.
+ * </ul>
+ * Bindings of commands that were still running or that failed are not part of a checkpoint, so that these commands can
+ * be executed again. Bindings whose key or value is not {@linkplain Serializable} will be dropped.
+ * <p>
+ * Checkpoints are immutable, but mind that the stored keys and values may not be.
+ */
+public final class Checkpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final Logger logger = Logger.getLogger(Checkpoint.class);
+
+	private final ImmutableList<String> commands;
+	private final LinkedHashMap<String, String> completedCommands;
+	private final LinkedHashMap<Object, Object> bindings;
+
+	private Checkpoint(List<String> commands, Map<String, String> completedCommands, Map<Object, Object> bindings) {
+		this.commands = ImmutableList.copyOf(commands);
+		this.completedCommands = Maps.newLinkedHashMap(completedCommands);
+		this.bindings = Maps.newLinkedHashMap(bindings);
+	}
+
+	/**
+	 * @param commands
+	 *            to be executed
+	 * @param bindings
+	 *            present before the execution started
+	 * @return a checkpoint without completed commands
+	 */
+	static Checkpoint of(List<CommandClass> commands, Map<Object, Object> bindings) {
+		List<String> commandNames = Lists.newArrayListWithCapacity(commands.size());
+		for (CommandClass command : commands) {
+			commandNames.add(command.getName());
+		}
+		return new Checkpoint(commandNames, Collections.<String, String> emptyMap(), serializable(bindings));
+	}
+
+	/**
+	 * @param command
+	 *            that completed without {@linkplain ResultState.Failure}
+	 * @param resultState
+	 *            of the command. Only its message will be kept.
+	 * @param outputs
+	 *            the command bound to the {@linkplain Context}
+	 * @return a new checkpoint which additionally contains the given command and its bindings
+	 */
+	Checkpoint completed(CommandClass command, ResultState resultState, Map<Object, Object> outputs) {
+		Check.stateIsTrue(!resultState.isFailure(), "resultState must not be a failure");
+		Map<String, String> completedCommands = Maps.newLinkedHashMap(this.completedCommands);
+		completedCommands.put(command.getName(), resultState.isWarning() ? resultState.getMessage() : null);
+		Map<Object, Object> bindings = Maps.newLinkedHashMap(this.bindings);
+		bindings.putAll(serializable(outputs));
+		return new Checkpoint(commands, completedCommands, bindings);
+	}
+
+	private static Map<Object, Object> serializable(Map<Object, Object> bindings) {
+		Map<Object, Object> serializable = Maps.newLinkedHashMap();
+		for (Map.Entry<Object, Object> binding : bindings.entrySet()) {
+			if (binding.getKey() instanceof Serializable
+					&& (binding.getValue() == null || binding.getValue() instanceof Serializable)) {
+				serializable.put(binding.getKey(), binding.getValue());
+			} else {
+				logger.warn("Binding of " + binding.getKey() + " is not serializable and will not be checkpointed");
+			}
+		}
+		return serializable;
+	}
+
+	/**
+	 * @return names of all commands of the execution in their execution order
+	 */
+	public List<String> getCommands() {
+		return commands;
+	}
+
+	/**
+	 * @return names of the commands that completed without {@linkplain ResultState.Failure} in the order they
+	 *         completed
+	 */
+	public Set<String> getCompletedCommands() {
+		return Collections.unmodifiableSet(completedCommands.keySet());
+	}
+
+	/**
+	 * @param command
+	 *            name of a completed command
+	 * @return a {@linkplain ResultState.Success} or a {@linkplain ResultState.Warning} without cause, depending on what
+	 *         the command returned
+	 */
+	ResultState getResultState(String command) {
+		Check.stateIsTrue(completedCommands.containsKey(command), "command must be completed");
+		String warning = completedCommands.get(command);
+		return warning == null ? ResultState.success() : ResultState.warning(warning);
+	}
+
+	/**
+	 * @return the serializable bindings before the execution started together with the ones bound by completed
+	 *         commands
+	 */
+	public Map<Object, Object> getBindings() {
+		return Collections.unmodifiableMap(bindings);
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("commands", commands)
+				.add("completedCommands", completedCommands.keySet()).add("bindings", bindings.keySet()).toString();
+	}
+
+}
@@ -0,0 +1,32 @@
+package cc.commandmanager.core;
+
+/**
+ * Stores the latest {@linkplain Checkpoint} of an execution, so that a failed execution can be resumed, see
+ * {@linkplain CommandManager#resume(Context)}.
+ * <p>
+ * Implementations must be thread-safe since commands executed in parallel save checkpoints concurrently.
+ *
+ * @see CommandManager.CommandManagerBuilder#checkpoints(CheckpointStore)
+ */
+public interface CheckpointStore {
+
+	/**
+	 * Save the given checkpoint, replacing the previously saved one.
+	 *
+	 * @param checkpoint
+	 *            to save
+	 */
+	void save(Checkpoint checkpoint);
+
+	/**
+	 * @return A {@linkplain Try} containing the latest saved checkpoint. {@linkplain Try#isPresent()} returns false if
+	 *         no checkpoint has been saved since the store was last cleared.
+	 */
+	Try<Checkpoint> load();
+
+	/**
+	 * Remove the saved checkpoint, e.g. after an execution completed without {@linkplain ResultState.Failure}.
+	 */
+	void clear();
+
+}
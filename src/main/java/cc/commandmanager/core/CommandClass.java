@@ -1,22 +1,68 @@
 package cc.commandmanager.core;
 
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Set;
+
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import net.sf.qualitycheck.Check;
 
+import com.google.common.collect.ImmutableMap;
+
 /**
  * Abstraction of a command type. A {@linkplain CommandClass} contains a descriptive name as well as a class name of a
  * {@linkplain Command} class.
  * <p>
  * The class name needs to be a fully qualified name for a Java class as obtained by
  * {@linkplain Class#getCanonicalName()}.
+ * <p>
+ * Optionally, a {@linkplain CommandClass} declares the resource class its command mainly uses together with a weight.
+ * If no resource class is given, it will be taken from the {@linkplain ResourceUsage} annotation of the command class.
+ * Likewise, a timeout can be declared which takes precedence over the {@linkplain Timeout} annotation. Resource usage
+ * and timeout are not taken into account by {@linkplain #equals(Object)}.
+ * <p>
+ * The command class is loaded once, when it is first needed, and its annotations are cached together with it. It is
+ * looked up using the context class loader of the current thread first, and the class loader of this library
+ * otherwise, so that commands can be provided by other class loaders, e.g. plugins. Its no-argument constructor is
+ * cached as a method handle on first instantiation. A failed resolution is cached as well, so every later
+ * instantiation fails fast with the same cause. If the {@linkplain CommandFactoryProcessor} generated a
+ * {@linkplain CommandFactory} for the command class, the factory is used instead of reflection.
  */
 @Immutable
 public class CommandClass {
 
+	/**
+	 * Weight of a command if neither the catalog nor a {@linkplain ResourceUsage} annotation declares one.
+	 */
+	public static final int DEFAULT_RESOURCE_WEIGHT = 1;
+
+	/**
+	 * Timeout of a command if neither the catalog nor a {@linkplain Timeout} annotation declares one.
+	 */
+	public static final long NO_TIMEOUT = 0;
+
 	private final String name;
 	private final String className;
+	@Nullable
+	private final String resourceClass;
+	private final int resourceWeight;
+	private final long timeoutMillis;
+	@Nullable
+	private volatile Class<?> loadedClass;
+	@Nullable
+	private volatile ClassNotFoundException loadFailure;
+	@Nullable
+	private volatile Map<Class<? extends Annotation>, Annotation> annotations;
+	@Nullable
+	private volatile MethodHandle constructor;
+	@Nullable
+	private volatile Exception resolutionFailure;
 
 	/**
 	 * Creates a new {@linkplain CommandClass} object having the given name and fully qualified class name.
@@ -27,8 +73,53 @@ public class CommandClass {
 	 *            of the command
 	 */
 	public CommandClass(String name, String className) {
+		this(name, className, null, DEFAULT_RESOURCE_WEIGHT);
+	}
+
+	/**
+	 * Creates a new {@linkplain CommandClass} object having the given name, fully qualified class name and resource
+	 * usage.
+	 * 
+	 * @param name
+	 *            of the command
+	 * @param className
+	 *            of the command
+	 * @param resourceClass
+	 *            the command mainly uses, e.g. {@code "DISK"}, or {@code null} to use the {@linkplain ResourceUsage}
+	 *            annotation of the command class
+	 * @param resourceWeight
+	 *            how much of the resource class's capacity the command occupies. Must be positive.
+	 */
+	public CommandClass(String name, String className, @Nullable String resourceClass, int resourceWeight) {
+		this(name, className, resourceClass, resourceWeight, NO_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new {@linkplain CommandClass} object having the given name, fully qualified class name, resource usage
+	 * and timeout.
+	 * 
+	 * @param name
+	 *            of the command
+	 * @param className
+	 *            of the command
+	 * @param resourceClass
+	 *            the command mainly uses, e.g. {@code "DISK"}, or {@code null} to use the {@linkplain ResourceUsage}
+	 *            annotation of the command class
+	 * @param resourceWeight
+	 *            how much of the resource class's capacity the command occupies. Must be positive.
+	 * @param timeoutMillis
+	 *            maximum duration of a single execution of the command in milliseconds, or {@value #NO_TIMEOUT} to use
+	 *            the {@linkplain Timeout} annotation of the command class. Must not be negative.
+	 */
+	public CommandClass(String name, String className, @Nullable String resourceClass, int resourceWeight,
+			long timeoutMillis) {
 		this.name = Check.notNull(name, "name");
 		this.className = Check.notNull(className, "className");
+		Check.stateIsTrue(resourceWeight > 0, "resourceWeight must be positive");
+		this.resourceClass = resourceClass;
+		this.resourceWeight = resourceWeight;
+		Check.stateIsTrue(timeoutMillis >= 0, "timeoutMillis must not be negative");
+		this.timeoutMillis = timeoutMillis;
 	}
 
 	/**
@@ -45,20 +136,219 @@ public class CommandClass {
 		return className;
 	}
 
+	/**
+	 * @return the resource class the command mainly uses, or {@code null} if neither this {@linkplain CommandClass} nor
+	 *         the command class declare one
+	 */
+	@Nullable
+	public String getResourceClass() {
+		if (resourceClass != null) {
+			return resourceClass;
+		}
+		ResourceUsage resourceUsage = findAnnotation(ResourceUsage.class);
+		return resourceUsage == null ? null : resourceUsage.value();
+	}
+
+	/**
+	 * @return how much of the capacity of {@linkplain #getResourceClass()} the command occupies
+	 */
+	public int getResourceWeight() {
+		if (resourceClass != null) {
+			return resourceWeight;
+		}
+		ResourceUsage resourceUsage = findAnnotation(ResourceUsage.class);
+		return resourceUsage == null ? resourceWeight : Math.max(1, resourceUsage.weight());
+	}
+
+	/**
+	 * @return maximum duration of a single execution of the command in milliseconds as declared by this
+	 *         {@linkplain CommandClass} or the {@linkplain Timeout} annotation of the command class, or
+	 *         {@value #NO_TIMEOUT} if the execution is not limited
+	 */
+	public long getTimeoutMillis() {
+		if (timeoutMillis != NO_TIMEOUT) {
+			return timeoutMillis;
+		}
+		Timeout timeout = findAnnotation(Timeout.class);
+		return timeout == null ? NO_TIMEOUT : Math.max(0, timeout.unit().toMillis(timeout.value()));
+	}
+
+	/**
+	 * @param annotationType
+	 *            to look for
+	 * @return the annotation of the given type of the command class, or {@code null} if the command class does not have
+	 *         such an annotation or cannot be loaded
+	 */
+	@Nullable
+	<A extends Annotation> A findAnnotation(Class<A> annotationType) {
+		Map<Class<? extends Annotation>, Annotation> resolved = annotations;
+		if (resolved == null) {
+			ImmutableMap.Builder<Class<? extends Annotation>, Annotation> builder = ImmutableMap.builder();
+			try {
+				for (Annotation annotation : loadClass().getAnnotations()) {
+					builder.put(annotation.annotationType(), annotation);
+				}
+			} catch (ClassNotFoundException e) {
+				// a command class that cannot be loaded has no annotations
+			}
+			resolved = builder.build();
+			annotations = resolved;
+		}
+		return annotationType.cast(resolved.get(annotationType));
+	}
+
+	/**
+	 * Loads the command class without initializing it unless this has already been done.
+	 * 
+	 * @throws ClassNotFoundException
+	 *             the same on every call if the command class cannot be loaded
+	 */
+	private Class<?> loadClass() throws ClassNotFoundException {
+		Class<?> loaded = loadedClass;
+		if (loaded != null) {
+			return loaded;
+		}
+		ClassNotFoundException failure = loadFailure;
+		if (failure != null) {
+			throw failure;
+		}
+		try {
+			loaded = forName(className);
+		} catch (ClassNotFoundException e) {
+			loadFailure = e;
+			throw e;
+		} catch (LinkageError e) {
+			failure = new ClassNotFoundException(className, e);
+			loadFailure = failure;
+			throw failure;
+		}
+		loadedClass = loaded;
+		return loaded;
+	}
+
+	private static Class<?> forName(String className) throws ClassNotFoundException {
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		if (contextClassLoader != null && contextClassLoader != CommandClass.class.getClassLoader()) {
+			try {
+				return Class.forName(className, false, contextClassLoader);
+			} catch (ClassNotFoundException e) {
+				// the context class loader need not know this library's class path
+			}
+		}
+		return Class.forName(className, false, CommandClass.class.getClassLoader());
+	}
+
+	/**
+	 * @return resource class as given to the constructor, without looking at the {@linkplain ResourceUsage} annotation
+	 */
+	@Nullable
+	String getDeclaredResourceClass() {
+		return resourceClass;
+	}
+
+	/**
+	 * @return resource weight as given to the constructor
+	 */
+	int getDeclaredResourceWeight() {
+		return resourceWeight;
+	}
+
+	/**
+	 * @return timeout as given to the constructor, without looking at the {@linkplain Timeout} annotation
+	 */
+	long getDeclaredTimeoutMillis() {
+		return timeoutMillis;
+	}
+
 	/**
 	 * @return a new {@linkplain Command} object
 	 */
 	public Command newInstance() {
+		MethodHandle constructor = resolveConstructor();
 		try {
-			return getClassForName(className).newInstance();
-		} catch (Exception e) {
+			return (Command) constructor.invokeExact();
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
 			throw new CommandNotInstantiableException(className, e);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private static Class<? extends Command> getClassForName(String commandClassName) throws ClassNotFoundException {
-		return (Class<? extends Command>) Class.forName(commandClassName);
+	/**
+	 * Resolves the command class and its public no-argument constructor unless this has already been done. Used to
+	 * detect commands that cannot be instantiated before any command of an execution is started.
+	 * 
+	 * @return handle invoking the no-argument constructor and returning the new instance as {@linkplain Command}
+	 * @throws CommandNotInstantiableException
+	 *             if the class cannot be found, is no {@linkplain Command} or has no accessible no-argument
+	 *             constructor
+	 */
+	MethodHandle resolveConstructor() {
+		MethodHandle resolved = constructor;
+		if (resolved != null) {
+			return resolved;
+		}
+		if (resolutionFailure != null) {
+			throw new CommandNotInstantiableException(className, resolutionFailure);
+		}
+		try {
+			CommandFactory factory = CommandFactory.forClassName(className);
+			if (factory != null) {
+				constructor = MethodHandles.publicLookup()
+						.findVirtual(CommandFactory.class, "newInstance", MethodType.methodType(Command.class))
+						.bindTo(factory);
+				return constructor;
+			}
+			Class<? extends Command> commandClass = loadClass().asSubclass(Command.class);
+			if (Modifier.isAbstract(commandClass.getModifiers())) {
+				throw new InstantiationException(className + " is abstract");
+			}
+			resolved = MethodHandles.publicLookup().findConstructor(commandClass, MethodType.methodType(void.class))
+					.asType(MethodType.methodType(Command.class));
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			resolutionFailure = e;
+			throw new CommandNotInstantiableException(className, e);
+		}
+		constructor = resolved;
+		return resolved;
+	}
+
+	/**
+	 * Returns the dependencies of the command. They are taken from the generated {@linkplain CommandFactory} or the
+	 * {@linkplain Dependencies} annotation of the command class. Only if neither exists, the command is instantiated to
+	 * ask for its dependencies.
+	 * 
+	 * @return factory of the command that knows its dependencies
+	 * @throws CommandNotInstantiableException
+	 *             if the dependencies can only be obtained from an instance, but the command cannot be instantiated
+	 */
+	CommandFactory getFactory() {
+		CommandFactory factory = CommandFactory.forClassName(className);
+		if (factory != null) {
+			return factory;
+		}
+		Dependencies dependencies = findAnnotation(Dependencies.class);
+		if (dependencies != null) {
+			return new ReflectiveCommandFactory(dependencies.before(), dependencies.after(),
+					dependencies.optionalBefore(), dependencies.optionalAfter());
+		}
+		Command command = newInstance();
+		return new ReflectiveCommandFactory(toArray(command.getBeforeDependencies()),
+				toArray(command.getAfterDependencies()), toArray(command.getOptionalBeforeDependencies()),
+				toArray(command.getOptionalAfterDependencies()));
+	}
+
+	/**
+	 * @return factory of the command that knows the given dependencies instead of the ones declared by the command class
+	 */
+	CommandFactory declareDependencies(Set<String> beforeDependencies, Set<String> afterDependencies,
+			Set<String> optionalBeforeDependencies, Set<String> optionalAfterDependencies) {
+		return new ReflectiveCommandFactory(toArray(beforeDependencies), toArray(afterDependencies),
+				toArray(optionalBeforeDependencies), toArray(optionalAfterDependencies));
+	}
+
+	private static String[] toArray(Set<String> dependencies) {
+		return dependencies.toArray(new String[dependencies.size()]);
 	}
 
 	/**
@@ -101,4 +391,22 @@ public class CommandClass {
 		return (name.equals(other.name) && className.equals(other.className));
 	}
 
+	/**
+	 * Factory for command classes without a generated {@linkplain CommandFactory}.
+	 */
+	private final class ReflectiveCommandFactory extends CommandFactory {
+
+		ReflectiveCommandFactory(String[] beforeDependencies, String[] afterDependencies,
+				String[] optionalBeforeDependencies, String[] optionalAfterDependencies) {
+			super(className, beforeDependencies, afterDependencies, optionalBeforeDependencies,
+					optionalAfterDependencies);
+		}
+
+		@Override
+		public Command newInstance() {
+			return CommandClass.this.newInstance();
+		}
+
+	}
+
 }
@@ -0,0 +1,669 @@
+package cc.commandmanager.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nullable;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A single execution of an ordered list of {@linkplain CommandClass}es. Every command keeps track of the number of its
+ * dependencies that did not finish yet (its remaining in-degree). A command becomes ready as soon as all of its
+ * mandatory and optional dependencies within the executed list have finished. Ready commands are started by their
+ * priority according to the configured {@linkplain SchedulingPolicy} and in the order of the given list otherwise.
+ * Ready commands are postponed as long as starting them would exceed the limit of their resource class. If a
+ * {@linkplain FingerprintStore} is configured, commands whose fingerprint did not change since their last execution
+ * will be skipped. If a {@linkplain ResultCache} is configured, the cached results of {@linkplain Cacheable} commands
+ * will be bound to the context instead of executing them. If a {@linkplain CheckpointStore} is configured, a
+ * {@linkplain Checkpoint} will be saved after every command that did not fail. A command whose timeout expires is
+ * reported as {@linkplain ResultState.Failure}. Failed commands are executed again according to their
+ * {@linkplain RetryPolicy}.
+ * <p>
+ * An execution can either be {@linkplain #run() run} in the calling thread, which executes the commands one after
+ * another, or be {@linkplain #start(Executor, int) started} on an {@linkplain Executor},
+ * which executes independent commands concurrently. In both cases no further command will be started after the first
+ * {@linkplain ResultState.Failure}. Commands that are running at that time will be finished. If the execution should
+ * continue on failure, only the commands depending on a failed command will not be started. These will be reported as
+ * skipped.
+ * <p>
+ * Instances are meant to be used only once.
+ */
+final class CommandExecution {
+
+	private static final Logger logger = Logger.getLogger(CommandExecution.class);
+
+	/**
+	 * Runs commands having a timeout, so that the thread waiting for them can give up.
+	 */
+	private static final ExecutorService TIMEOUT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setDaemon(true).setNameFormat("command-timeout-%d").build());
+
+	/**
+	 * Resubmits commands to be retried after their backoff, so that no worker thread waits in the meantime.
+	 */
+	private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("command-retry-%d").build());
+
+	private final List<CommandClass> commands;
+	private final Context context;
+	@Nullable
+	private final DurationStore durationStore;
+	@Nullable
+	private final FingerprintStore fingerprintStore;
+	private final ValueCodec fingerprintCodec;
+	@Nullable
+	private final ResultCache resultCache;
+	@Nullable
+	private final CheckpointStore checkpointStore;
+	private final int[] remainingDependencies;
+	private final int[][] dependencies;
+	private final int[][] dependents;
+	private final String[] resourceClasses;
+	private final int[] resourceWeights;
+	private final long[] timeouts;
+	private final RetryPolicy[] retryPolicies;
+	private final int[] attempts;
+	private final ListMultimap<CommandClass, ResultState> failedAttempts;
+	private final long[] fingerprints;
+	private final boolean continueOnFailure;
+	private final boolean[] finished;
+	private final Map<String, Integer> resourceLimits;
+	private final Map<String, Integer> usedResources;
+	private final Queue<Integer> readyCommands;
+	private final List<ResultState> resultStates;
+	private final List<CommandClass> executedCommands;
+	private final CompletableFuture<ComposedResultState> result;
+
+	private int runningCommands;
+	private int backingOffCommands;
+	private boolean aborted;
+	@Nullable
+	private Checkpoint checkpoint;
+	@Nullable
+	private Throwable error;
+
+	/**
+	 * @param graph
+	 *            providing the dependencies between the given commands
+	 * @param commands
+	 *            to be executed in topological order. Dependencies on commands that are not part of this list will be
+	 *            ignored.
+	 * @param context
+	 *            will be passed to every executed {@linkplain Command}.
+	 * @param settings
+	 *            of the {@linkplain CommandManager} executing the commands
+	 */
+	CommandExecution(CommandGraph graph, List<CommandClass> commands, Context context, ExecutionSettings settings) {
+		this(graph, commands, context, settings, null);
+	}
+
+	/**
+	 * @param graph
+	 *            providing the dependencies between the given commands
+	 * @param commands
+	 *            to be executed in topological order. Dependencies on commands that are not part of this list will be
+	 *            ignored.
+	 * @param context
+	 *            will be passed to every executed {@linkplain Command}.
+	 * @param settings
+	 *            of the {@linkplain CommandManager} executing the commands
+	 * @param resumedCheckpoint
+	 *            to add the completed commands of this execution to, or {@code null} to start a new checkpoint. Only
+	 *            used if the settings contain a {@linkplain CheckpointStore}.
+	 */
+	CommandExecution(CommandGraph graph, List<CommandClass> commands, Context context, ExecutionSettings settings,
+			@Nullable Checkpoint resumedCheckpoint) {
+		Check.notNull(graph, "graph");
+		Check.notNull(settings, "settings");
+		this.commands = ImmutableList.copyOf(Check.noNullElements(commands, "commands"));
+		this.context = Check.notNull(context, "context");
+		durationStore = settings.durationStore;
+		fingerprintStore = settings.fingerprintStore;
+		fingerprintCodec = settings.fingerprintCodec;
+		resultCache = settings.resultCache;
+		checkpointStore = settings.checkpointStore;
+		if (checkpointStore != null) {
+			if (resumedCheckpoint == null) {
+				checkpoint = Checkpoint.of(this.commands, context.copyOfItems());
+				checkpointStore.save(checkpoint);
+			} else {
+				checkpoint = resumedCheckpoint;
+			}
+		}
+
+		Map<String, Integer> indices = Maps.newHashMapWithExpectedSize(this.commands.size());
+		for (int index = 0; index < this.commands.size(); index++) {
+			indices.put(this.commands.get(index).getName(), index);
+		}
+
+		remainingDependencies = new int[this.commands.size()];
+		dependencies = new int[this.commands.size()][];
+		List<List<Integer>> dependentsOf = Lists.newArrayListWithCapacity(this.commands.size());
+		for (int index = 0; index < this.commands.size(); index++) {
+			dependentsOf.add(Lists.<Integer> newArrayList());
+		}
+		for (int index = 0; index < this.commands.size(); index++) {
+			List<Integer> dependenciesOf = Lists.newArrayList();
+			for (CommandClass dependency : graph.getDependencies(this.commands.get(index).getName())) {
+				Integer dependencyIndex = indices.get(dependency.getName());
+				if (dependencyIndex != null) {
+					remainingDependencies[index]++;
+					dependenciesOf.add(dependencyIndex);
+					dependentsOf.get(dependencyIndex).add(index);
+				}
+			}
+			dependencies[index] = Ints.toArray(dependenciesOf);
+		}
+		dependents = new int[this.commands.size()][];
+		for (int index = 0; index < this.commands.size(); index++) {
+			dependents[index] = Ints.toArray(dependentsOf.get(index));
+		}
+		fingerprints = new long[this.commands.size()];
+		continueOnFailure = settings.continueOnFailure;
+		finished = new boolean[this.commands.size()];
+
+		resourceLimits = settings.resourceLimits;
+		usedResources = Maps.newHashMap();
+		resourceClasses = new String[this.commands.size()];
+		resourceWeights = new int[this.commands.size()];
+		if (!resourceLimits.isEmpty()) {
+			for (int index = 0; index < this.commands.size(); index++) {
+				String resourceClass = this.commands.get(index).getResourceClass();
+				if (resourceClass != null && resourceLimits.containsKey(resourceClass)) {
+					resourceClasses[index] = resourceClass;
+					// a command heavier than the whole capacity would never start otherwise
+					resourceWeights[index] = Math.min(this.commands.get(index).getResourceWeight(),
+							resourceLimits.get(resourceClass));
+				}
+			}
+		}
+
+		timeouts = new long[this.commands.size()];
+		retryPolicies = new RetryPolicy[this.commands.size()];
+		for (int index = 0; index < this.commands.size(); index++) {
+			this.commands.get(index).resolveConstructor();
+			timeouts[index] = this.commands.get(index).getTimeoutMillis();
+			Retry retry = this.commands.get(index).findAnnotation(Retry.class);
+			retryPolicies[index] = retry == null ? settings.retryPolicy : RetryPolicy.of(retry);
+		}
+		attempts = new int[this.commands.size()];
+		failedAttempts = ArrayListMultimap.create();
+
+		readyCommands = new PriorityQueue<Integer>(Math.max(1, this.commands.size()), readyOrder(graph,
+				this.commands, settings.schedulingPolicy));
+		for (int index = 0; index < this.commands.size(); index++) {
+			if (remainingDependencies[index] == 0) {
+				readyCommands.add(index);
+			}
+		}
+		resultStates = Lists.newArrayListWithCapacity(this.commands.size());
+		executedCommands = Lists.newArrayListWithCapacity(this.commands.size());
+		result = new CompletableFuture<ComposedResultState>();
+	}
+
+	private static Comparator<Integer> readyOrder(CommandGraph graph, List<CommandClass> commands,
+			@Nullable SchedulingPolicy schedulingPolicy) {
+		if (schedulingPolicy == null) {
+			return Ordering.natural();
+		}
+		final long[] priorities = schedulingPolicy.prioritize(graph, commands);
+		Check.stateIsTrue(priorities.length == commands.size(), "schedulingPolicy must prioritize every command");
+		return new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer command, Integer otherCommand) {
+				int byPriority = Long.compare(priorities[otherCommand], priorities[command]);
+				return byPriority != 0 ? byPriority : command.compareTo(otherCommand);
+			}
+
+		};
+	}
+
+	/**
+	 * Execute all commands in the calling thread. Exceptions thrown by a {@linkplain Command} will be passed on to the
+	 * caller.
+	 *
+	 * @return {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	ComposedResultState run() {
+		Integer command;
+		while ((command = nextReadyCommand()) != null) {
+			ResultState resultState = execute(command);
+			while (retry(command, resultState)) {
+				try {
+					Thread.sleep(retryPolicies[command].delayMillis(attempts[command]));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				resultState = execute(command);
+			}
+			completed(command, resultState);
+		}
+		return result.join();
+	}
+
+	/**
+	 * Start executing all commands on the given executor. Each command will be submitted as soon as all of its
+	 * dependencies have finished, but no more than {@code parallelism} commands will run at the same time.
+	 *
+	 * @param executor
+	 *            to run the commands on
+	 * @param parallelism
+	 *            maximum number of commands running at the same time. Must be positive.
+	 * @return a future that will be completed with the {@linkplain ComposedResultState} of the executed
+	 *         {@linkplain Command}s, or exceptionally if a {@linkplain Command} threw an exception.
+	 */
+	CompletableFuture<ComposedResultState> start(Executor executor, int parallelism) {
+		Check.notNull(executor, "executor");
+		Check.stateIsTrue(parallelism > 0, "parallelism must be positive");
+		dispatch(executor, parallelism);
+		return result;
+	}
+
+	private void dispatch(final Executor executor, final int parallelism) {
+		List<Integer> startable = Lists.newArrayList();
+		synchronized (this) {
+			while (runningCommands < parallelism) {
+				Integer command = nextReadyCommand();
+				if (command == null) {
+					break;
+				}
+				startable.add(command);
+			}
+		}
+		for (Integer command : startable) {
+			submit(executor, parallelism, command);
+		}
+	}
+
+	private void submit(final Executor executor, final int parallelism, final int command) {
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						final ResultState resultState = execute(command);
+						if (retry(command, resultState)) {
+							backOff(command);
+							RETRY_SCHEDULER.schedule(new Runnable() {
+
+								@Override
+								public void run() {
+									if (backedOff(command, resultState)) {
+										dispatch(executor, parallelism);
+									}
+								}
+
+							}, retryPolicies[command].delayMillis(attempts[command]), TimeUnit.MILLISECONDS);
+						} else {
+							completed(command, resultState);
+						}
+					} catch (Throwable t) {
+						failed(command, t);
+					}
+					dispatch(executor, parallelism);
+				}
+
+			});
+		} catch (RuntimeException e) {
+			failed(command, e);
+		}
+	}
+
+	/**
+	 * Decide whether the given command will be executed again after the given attempt. If so, the attempt will be
+	 * recorded as failed attempt.
+	 */
+	private synchronized boolean retry(int command, ResultState resultState) {
+		attempts[command]++;
+		if (aborted || !retryPolicies[command].shouldRetry(resultState, attempts[command])) {
+			return false;
+		}
+		failedAttempts.put(commands.get(command), resultState);
+		logger.warn("Attempt " + attempts[command] + " of " + retryPolicies[command].getMaxAttempts() + " of command "
+				+ commands.get(command).getName() + " failed. Retrying.");
+		return true;
+	}
+
+	/**
+	 * Release the slot and the resources of a command while it is backing off, so that other commands can use them.
+	 */
+	private synchronized void backOff(int command) {
+		runningCommands--;
+		releaseResources(command);
+		backingOffCommands++;
+	}
+
+	/**
+	 * Make a command ready again after backing off. If the execution has been aborted in the meantime, the given last
+	 * attempt will be the command's result instead.
+	 *
+	 * @return whether the command is ready to be dispatched again
+	 */
+	private synchronized boolean backedOff(int command, ResultState lastAttempt) {
+		backingOffCommands--;
+		if (!aborted) {
+			readyCommands.add(command);
+			return true;
+		}
+		List<ResultState> commandAttempts = failedAttempts.get(commands.get(command));
+		commandAttempts.remove(commandAttempts.size() - 1);
+		resultStates.add(lastAttempt);
+		executedCommands.add(commands.get(command));
+		finished[command] = true;
+		completeIfFinished();
+		return false;
+	}
+
+	@Nullable
+	private synchronized Integer nextReadyCommand() {
+		if (aborted) {
+			return null;
+		}
+		List<Integer> postponed = Lists.newArrayList();
+		Integer command;
+		while ((command = readyCommands.poll()) != null && !acquireResources(command)) {
+			postponed.add(command);
+		}
+		readyCommands.addAll(postponed);
+		if (command != null) {
+			runningCommands++;
+		}
+		return command;
+	}
+
+	private boolean acquireResources(int command) {
+		String resourceClass = resourceClasses[command];
+		if (resourceClass == null) {
+			return true;
+		}
+		int used = usedResources.containsKey(resourceClass) ? usedResources.get(resourceClass) : 0;
+		if (used + resourceWeights[command] > resourceLimits.get(resourceClass)) {
+			return false;
+		}
+		usedResources.put(resourceClass, used + resourceWeights[command]);
+		return true;
+	}
+
+	private void releaseResources(int command) {
+		String resourceClass = resourceClasses[command];
+		if (resourceClass != null) {
+			usedResources.put(resourceClass, usedResources.get(resourceClass) - resourceWeights[command]);
+		}
+	}
+
+	private ResultState execute(int index) {
+		if (fingerprintStore == null && resultCache == null && checkpointStore == null) {
+			return execute(index, context);
+		}
+
+		RecordingContext recordingContext = new RecordingContext(context);
+		ResultState resultState = executeIncrementally(index, recordingContext);
+		if (checkpointStore != null && !resultState.isFailure()) {
+			synchronized (checkpointStore) {
+				checkpoint = checkpoint.completed(commands.get(index), resultState, recordingContext.getOutputs());
+				checkpointStore.save(checkpoint);
+			}
+		}
+		return resultState;
+	}
+
+	/**
+	 * Execute a command only if its fingerprint changed since its last execution. Otherwise the values it bound last
+	 * time will be bound to the context.
+	 */
+	private ResultState executeIncrementally(int index, RecordingContext recordingContext) {
+		if (fingerprintStore == null) {
+			return executeCached(index, recordingContext);
+		}
+
+		CommandClass command = commands.get(index);
+		Try<CommandFingerprint> lastExecution = fingerprintStore.getFingerprint(command);
+		if (lastExecution.isPresent()) {
+			CommandFingerprint last = lastExecution.get();
+			Long fingerprint = fingerprint(index, RecordingContext.valuesOf(context, last.getInputKeys()));
+			if (fingerprint != null && fingerprint == last.getFingerprint()) {
+				recordingContext.restore(last.getOutputs());
+				fingerprints[index] = fingerprint;
+				logger.info("Command " + command.getName() + " is up to date and will be skipped");
+				return last.getResultState();
+			}
+		}
+
+		ResultState resultState = executeCached(index, recordingContext);
+		if (!resultState.isFailure()) {
+			Map<Object, Object> inputs = recordingContext.getInputs();
+			Long fingerprint = fingerprint(index, inputs);
+			if (fingerprint == null) {
+				// a fingerprint nobody can reproduce, so that dependents are executed again as well
+				fingerprints[index] = ThreadLocalRandom.current().nextLong();
+			} else {
+				fingerprints[index] = fingerprint;
+				fingerprintStore.record(command, new CommandFingerprint(fingerprint, ImmutableList.copyOf(inputs
+						.keySet()), recordingContext.getOutputs(), resultState));
+			}
+		}
+		return resultState;
+	}
+
+	/**
+	 * The fingerprint of a command is computed from its name and class name, the encoded input keys and values and the
+	 * fingerprints of its dependencies. Thus it changes as soon as the fingerprint of any transitive dependency changes.
+	 * 
+	 * @return the fingerprint, or {@code null} if an input key or value cannot be encoded
+	 */
+	@Nullable
+	private Long fingerprint(int index, Map<Object, Object> inputs) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putString(commands.get(index).getName(), StandardCharsets.UTF_8);
+		hasher.putString(commands.get(index).getClassName(), StandardCharsets.UTF_8);
+		try {
+			for (Map.Entry<Object, Object> input : inputs.entrySet()) {
+				byte[] key = fingerprintCodec.encode(input.getKey());
+				hasher.putInt(key.length).putBytes(key);
+				hasher.putBoolean(input.getValue() != RecordingContext.UNBOUND);
+				if (input.getValue() != RecordingContext.UNBOUND) {
+					byte[] value = fingerprintCodec.encode(input.getValue());
+					hasher.putInt(value.length).putBytes(value);
+				}
+			}
+		} catch (IOException e) {
+			logger.debug("Inputs of command " + commands.get(index).getName() + " cannot be fingerprinted: " + e);
+			return null;
+		}
+		for (int dependency : dependencies[index]) {
+			hasher.putLong(fingerprints[dependency]);
+		}
+		return hasher.hash().asLong();
+	}
+
+	/**
+	 * Execute a {@linkplain Cacheable} command only if the {@linkplain ResultCache} does not contain a result for its
+	 * current inputs. Otherwise the cached values will be bound to the context.
+	 */
+	private ResultState executeCached(int index, RecordingContext recordingContext) {
+		CommandClass command = commands.get(index);
+		Cacheable cacheable = resultCache == null ? null : command.findAnnotation(Cacheable.class);
+		if (cacheable == null) {
+			return execute(index, recordingContext);
+		}
+
+		Map<String, Object> inputs = Maps.newHashMap();
+		for (String key : cacheable.inputs()) {
+			if (recordingContext.containsKey(key)) {
+				inputs.put(key, recordingContext.get(key));
+			}
+		}
+		Try<Map<Object, Object>> cachedOutputs = resultCache.lookup(command, inputs);
+		if (cachedOutputs.isPresent()) {
+			recordingContext.restore(cachedOutputs.get());
+			logger.info("Command " + command.getName() + " has a cached result and will be skipped");
+			return ResultState.success();
+		}
+
+		ResultState resultState = execute(index, recordingContext);
+		if (resultState.isSuccess()) {
+			resultCache.store(command, inputs, recordingContext.getOutputs());
+		}
+		return resultState;
+	}
+
+	private ResultState execute(int index, Context context) {
+		Command commandInstance = commands.get(index).newInstance();
+		logger.info("Execute current command: " + commandInstance.getClass());
+		long startTime = System.currentTimeMillis();
+		ResultState resultState = execute(commandInstance, context, timeouts[index]);
+		if (durationStore != null) {
+			durationStore.record(commands.get(index), System.currentTimeMillis() - startTime);
+		}
+		if (resultState.isSuccess()) {
+			logger.info("Command " + commandInstance.getClass() + " successfully executed in "
+					+ (System.currentTimeMillis() - startTime) + " ms");
+		} else if (resultState.isWarning()) {
+			logger.warn("Command " + commandInstance.getClass() + " executed with warning in "
+					+ (System.currentTimeMillis() - startTime) + " ms: " + resultState.getMessage() + " "
+					+ resultState.getCause());
+		} else {
+			logger.error("Command " + commandInstance.getClass() + " failed to execute (took "
+					+ (System.currentTimeMillis() - startTime) + " ms): " + resultState.getMessage() + " "
+					+ resultState.getCause());
+		}
+		return resultState;
+	}
+
+	/**
+	 * Execute a command with a timeout in another thread and wait for it at most as long as the timeout. If the timeout
+	 * expires, the command's {@linkplain CancellationToken} will be cancelled and its thread interrupted. Values the
+	 * command binds after its timeout expired will not be removed from the context.
+	 */
+	private static ResultState execute(final Command command, final Context context, long timeoutMillis) {
+		if (timeoutMillis == CommandClass.NO_TIMEOUT) {
+			return command.execute(context);
+		}
+
+		final CancellationToken token = new CancellationToken();
+		Future<ResultState> resultState = TIMEOUT_EXECUTOR.submit(new Callable<ResultState>() {
+
+			@Override
+			public ResultState call() {
+				CancellationToken.setCurrent(token);
+				try {
+					return command.execute(context);
+				} finally {
+					CancellationToken.setCurrent(null);
+				}
+			}
+
+		});
+		try {
+			return resultState.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			token.cancel();
+			resultState.cancel(true);
+			return ResultState.failure("Command " + command.getClass() + " timed out after " + timeoutMillis + " ms",
+					e);
+		} catch (InterruptedException e) {
+			token.cancel();
+			resultState.cancel(true);
+			Thread.currentThread().interrupt();
+			return ResultState.failure("Interrupted while waiting for command " + command.getClass(), e);
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new UncheckedExecutionException(e.getCause());
+		}
+	}
+
+	private synchronized void completed(int index, ResultState resultState) {
+		runningCommands--;
+		releaseResources(index);
+		resultStates.add(resultState);
+		executedCommands.add(commands.get(index));
+		finished[index] = true;
+		if (resultState.isFailure() && continueOnFailure) {
+			logger.error("Skipping all commands depending on " + commands.get(index).getName() + ".");
+		} else if (resultState.isFailure()) {
+			if (!aborted) {
+				logger.error("Aborting execution of all commands.");
+			}
+			aborted = true;
+		} else {
+			for (int dependent : dependents[index]) {
+				if (--remainingDependencies[dependent] == 0) {
+					readyCommands.add(dependent);
+				}
+			}
+		}
+		completeIfFinished();
+	}
+
+	private synchronized void failed(int index, Throwable cause) {
+		runningCommands--;
+		releaseResources(index);
+		aborted = true;
+		if (error == null) {
+			error = cause;
+		}
+		completeIfFinished();
+	}
+
+	private void completeIfFinished() {
+		if (runningCommands > 0 || backingOffCommands > 0 || !(aborted || readyCommands.isEmpty())) {
+			return;
+		}
+		if (error != null) {
+			result.completeExceptionally(error);
+			return;
+		}
+		List<CommandClass> skippedCommands = Lists.newArrayList();
+		if (continueOnFailure && !aborted) {
+			// commands depending on a failed command never become ready
+			for (int index = 0; index < commands.size(); index++) {
+				if (!finished[index]) {
+					skippedCommands.add(commands.get(index));
+				}
+			}
+		}
+		ComposedResultState composedResultState = new ComposedResultState(resultStates, executedCommands,
+				skippedCommands, failedAttempts);
+		if (checkpointStore != null && !composedResultState.isFailure()) {
+			checkpointStore.clear();
+		}
+		result.complete(composedResultState);
+	}
+
+}
@@ -0,0 +1,143 @@
+package cc.commandmanager.core;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Creates instances of one {@linkplain Command} class and knows its dependencies without having to instantiate it.
+ * <p>
+ * Subclasses are generated by the {@linkplain CommandFactoryProcessor} for every class annotated with
+ * {@linkplain Dependencies} and registered as services of this class. {@linkplain CommandClass} and
+ * {@linkplain CommandGraph} look up the generated factory of a command class by its name and fall back to reflection if
+ * there is none.
+ */
+@Immutable
+public abstract class CommandFactory {
+
+	private static final Logger logger = Logger.getLogger(CommandFactory.class);
+
+	private final String className;
+	private final ImmutableSet<String> beforeDependencies;
+	private final ImmutableSet<String> afterDependencies;
+	private final ImmutableSet<String> optionalBeforeDependencies;
+	private final ImmutableSet<String> optionalAfterDependencies;
+
+	/**
+	 * @param className
+	 *            binary name of the command class as accepted by {@linkplain Class#forName(String)}
+	 * @param beforeDependencies
+	 *            see {@linkplain Dependencies#before()}
+	 * @param afterDependencies
+	 *            see {@linkplain Dependencies#after()}
+	 * @param optionalBeforeDependencies
+	 *            see {@linkplain Dependencies#optionalBefore()}
+	 * @param optionalAfterDependencies
+	 *            see {@linkplain Dependencies#optionalAfter()}
+	 */
+	protected CommandFactory(String className, String[] beforeDependencies, String[] afterDependencies,
+			String[] optionalBeforeDependencies, String[] optionalAfterDependencies) {
+		this.className = Check.notNull(className, "className");
+		this.beforeDependencies = ImmutableSet.copyOf(Check.noNullElements(beforeDependencies, "beforeDependencies"));
+		this.afterDependencies = ImmutableSet.copyOf(Check.noNullElements(afterDependencies, "afterDependencies"));
+		this.optionalBeforeDependencies = ImmutableSet.copyOf(Check.noNullElements(optionalBeforeDependencies,
+				"optionalBeforeDependencies"));
+		this.optionalAfterDependencies = ImmutableSet.copyOf(Check.noNullElements(optionalAfterDependencies,
+				"optionalAfterDependencies"));
+	}
+
+	/**
+	 * @return the generated factory of the given command class, or {@code null} if there is none
+	 */
+	@Nullable
+	static CommandFactory forClassName(String className) {
+		return Index.FACTORIES.get(className);
+	}
+
+	/**
+	 * @return binary name of the command class
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return a new instance of the command class
+	 */
+	public abstract Command newInstance();
+
+	/**
+	 * @return see {@linkplain Command#getBeforeDependencies()}
+	 */
+	public Set<String> getBeforeDependencies() {
+		return beforeDependencies;
+	}
+
+	/**
+	 * @return see {@linkplain Command#getAfterDependencies()}
+	 */
+	public Set<String> getAfterDependencies() {
+		return afterDependencies;
+	}
+
+	/**
+	 * @return see {@linkplain Command#getOptionalBeforeDependencies()}
+	 */
+	public Set<String> getOptionalBeforeDependencies() {
+		return optionalBeforeDependencies;
+	}
+
+	/**
+	 * @return see {@linkplain Command#getOptionalAfterDependencies()}
+	 */
+	public Set<String> getOptionalAfterDependencies() {
+		return optionalAfterDependencies;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [className=" + className + "]";
+	}
+
+	/**
+	 * Generated factories on the class path of this library, loaded on first use.
+	 */
+	private static final class Index {
+
+		static final ImmutableMap<String, CommandFactory> FACTORIES = load();
+
+		private static ImmutableMap<String, CommandFactory> load() {
+			Map<String, CommandFactory> factories = Maps.newHashMap();
+			Iterator<CommandFactory> iterator = ServiceLoader.load(CommandFactory.class,
+					CommandFactory.class.getClassLoader()).iterator();
+			while (true) {
+				// a stale registration must not prevent loading the remaining factories
+				try {
+					if (!iterator.hasNext()) {
+						break;
+					}
+					CommandFactory factory = iterator.next();
+					factories.put(factory.getClassName(), factory);
+				} catch (ServiceConfigurationError e) {
+					logger.warn("Generated command factory could not be loaded: " + e.getMessage());
+				}
+			}
+			return ImmutableMap.copyOf(factories);
+		}
+
+	}
+
+}
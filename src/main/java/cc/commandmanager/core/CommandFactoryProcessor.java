@@ -0,0 +1,178 @@
+package cc.commandmanager.core;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Sets;
+
+/**
+ * Annotation processor generating a {@linkplain CommandFactory} for every class annotated with
+ * {@linkplain Dependencies}. The factories are registered in {@code META-INF/services}, so that they are found at
+ * runtime by {@linkplain CommandFactory#forClassName(String)}.
+ * <p>
+ * The processor is registered as a service itself and therefore runs whenever this library is on the class path of the
+ * compiler, unless annotation processing is disabled.
+ */
+@SupportedAnnotationTypes("cc.commandmanager.core.Dependencies")
+public class CommandFactoryProcessor extends AbstractProcessor {
+
+	private static final String SERVICE_FILE = "META-INF/services/" + CommandFactory.class.getName();
+	private static final String FACTORY_SUFFIX = "_CommandFactory";
+
+	private final Set<String> factoryNames = Sets.newTreeSet();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+		if (roundEnvironment.processingOver()) {
+			if (!factoryNames.isEmpty()) {
+				writeServiceFile();
+			}
+			return false;
+		}
+		for (Element element : roundEnvironment.getElementsAnnotatedWith(Dependencies.class)) {
+			if (isInstantiableCommand(element)) {
+				writeFactory((TypeElement) element);
+			}
+		}
+		return false;
+	}
+
+	private boolean isInstantiableCommand(Element element) {
+		if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+			return error(element, "Only concrete classes can declare @Dependencies");
+		}
+		TypeElement commandType = (TypeElement) element;
+		if (!processingEnv.getTypeUtils().isAssignable(commandType.asType(),
+				processingEnv.getElementUtils().getTypeElement(Command.class.getName()).asType())) {
+			return error(element, "Classes declaring @Dependencies must implement " + Command.class.getName());
+		}
+		for (Element type = commandType; type instanceof TypeElement; type = type.getEnclosingElement()) {
+			if (!type.getModifiers().contains(Modifier.PUBLIC)
+					|| (((TypeElement) type).getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(
+							Modifier.STATIC))) {
+				return error(element, "Classes declaring @Dependencies must be public and, if nested, static");
+			}
+		}
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(commandType.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				return true;
+			}
+		}
+		return error(element, "Classes declaring @Dependencies must have a public no-argument constructor");
+	}
+
+	private boolean error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+		return false;
+	}
+
+	private void writeFactory(TypeElement commandType) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(commandType);
+		String packageName = packageElement.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(commandType).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+				.replace('$', '_') + FACTORY_SUFFIX;
+		String factoryName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		Dependencies dependencies = commandType.getAnnotation(Dependencies.class);
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Generated by ").append(CommandFactoryProcessor.class.getName()).append(".\n */\n");
+		source.append("public final class ").append(simpleName).append(" extends ")
+				.append(CommandFactory.class.getName()).append(" {\n\n");
+		source.append("\tpublic ").append(simpleName).append("() {\n");
+		source.append("\t\tsuper(").append(constant(binaryName)).append(", ").append(constants(dependencies.before()))
+				.append(", ").append(constants(dependencies.after())).append(", ")
+				.append(constants(dependencies.optionalBefore())).append(", ")
+				.append(constants(dependencies.optionalAfter())).append(");\n");
+		source.append("\t}\n\n");
+		source.append("\t@Override\n");
+		source.append("\tpublic ").append(Command.class.getName()).append(" newInstance() {\n");
+		source.append("\t\treturn new ").append(commandType.getQualifiedName()).append("();\n");
+		source.append("\t}\n\n");
+		source.append("}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(factoryName, commandType).openWriter()) {
+			writer.write(source.toString());
+		} catch (IOException e) {
+			error(commandType, "Command factory could not be written: " + e.getMessage());
+			return;
+		}
+		factoryNames.add(factoryName);
+	}
+
+	private String constant(String value) {
+		return processingEnv.getElementUtils().getConstantExpression(value);
+	}
+
+	private String constants(String[] values) {
+		StringBuilder array = new StringBuilder("new String[] {");
+		for (int index = 0; index < values.length; index++) {
+			array.append(index == 0 ? " " : ", ").append(constant(values[index]));
+		}
+		return array.append(values.length == 0 ? "}" : " }").toString();
+	}
+
+	/**
+	 * Writes the names of all generated factories to the service file. Factories registered by an earlier,
+	 * incremental compilation into the same output directory are kept.
+	 */
+	private void writeServiceFile() {
+		try {
+			FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+			try (Reader reader = existing.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+				for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+					if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+						factoryNames.add(line.trim());
+					}
+				}
+			}
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			// no factories have been registered before
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+					"Registered command factories could not be read: " + e.getMessage());
+		}
+
+		try {
+			FileObject serviceFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					SERVICE_FILE);
+			try (Writer writer = serviceFile.openWriter()) {
+				writer.write(Joiner.on('\n').join(factoryNames) + "\n");
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Command factories could not be registered: " + e.getMessage());
+		}
+	}
+
+}
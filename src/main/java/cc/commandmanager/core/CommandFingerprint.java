@@ -0,0 +1,76 @@
+package cc.commandmanager.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.concurrent.Immutable;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Outcome of a single execution of a {@linkplain Command} in incremental mode. It consists of
+ * <ul>
+ * <li>the fingerprint of the values the command read from the {@linkplain Context} and of the fingerprints of its
+ * dependencies,
+ * <li>the keys the command read, so that the fingerprint can be computed again before the next execution,
+ * <li>the values the command bound to the {@linkplain Context}, so that they can be restored if the command is skipped
+ * and
+ * <li>the {@linkplain ResultState} the command returned.
+ * </ul>
+ * Mind that the stored keys and values may not be immutable.
+ *
+ * @see CommandManager.CommandManagerBuilder#incremental(FingerprintStore)
+ */
+@Immutable
+public final class CommandFingerprint {
+
+	private final long fingerprint;
+	private final ImmutableList<Object> inputKeys;
+	private final Map<Object, Object> outputs;
+	private final ResultState resultState;
+
+	/**
+	 * @param fingerprint
+	 *            of the inputs and the dependencies of the command
+	 * @param inputKeys
+	 *            keys the command read from the {@linkplain Context} in the order they were fingerprinted
+	 * @param outputs
+	 *            values the command bound to the {@linkplain Context}. Values may be null.
+	 * @param resultState
+	 *            returned by the command
+	 */
+	public CommandFingerprint(long fingerprint, List<?> inputKeys, Map<?, ?> outputs, ResultState resultState) {
+		this.fingerprint = fingerprint;
+		this.inputKeys = ImmutableList.copyOf(Check.notNull(inputKeys, "inputKeys"));
+		this.outputs = Collections.unmodifiableMap(Maps.newLinkedHashMap(Check.notNull(outputs, "outputs")));
+		this.resultState = Check.notNull(resultState, "resultState");
+	}
+
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	public List<Object> getInputKeys() {
+		return inputKeys;
+	}
+
+	public Map<Object, Object> getOutputs() {
+		return outputs;
+	}
+
+	public ResultState getResultState() {
+		return resultState;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("fingerprint", fingerprint).add("inputKeys", inputKeys)
+				.add("outputs", outputs.keySet()).add("resultState", resultState).toString();
+	}
+
+}
@@ -1,28 +1,40 @@
 package cc.commandmanager.core;
 
-import static com.google.common.base.Predicates.in;
-
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nullable;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import net.sf.qualitycheck.Check;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 
-import org.jgrapht.alg.ConnectivityInspector;
+import org.apache.log4j.Logger;
 import org.jgrapht.experimental.dag.DirectedAcyclicGraph;
 import org.jgrapht.experimental.dag.DirectedAcyclicGraph.CycleFoundException;
 import org.jgrapht.graph.DefaultEdge;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXParseException;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -31,6 +43,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
 /**
  * A {@linkplain CommandGraph} is a graph of {@linkplain CommandClasse}s. Edges represent dependencies. Each dependency
@@ -43,22 +58,104 @@ import com.google.common.collect.Maps;
  * <li>immutable and
  * <li>topologically sorted.
  * </ul>
+ * Internally, each command has a dense int id and dependencies are stored as compressed sparse rows of ids, so that a
+ * dependency takes up an int and a bit instead of an edge object.
+ * <p>
+ * Instances can be shared between threads. Indexes which are not needed by every graph are built on demand, unless the
+ * graph is {@linkplain #freeze() frozen}.
  */
 public class CommandGraph {
 
+	private static final Logger logger = Logger.getLogger(CommandGraph.class);
+
 	private static final String INDENTATION = "  ";
 	private static final String COMMAND = "command";
 	private static final String NAME = "name";
 	private static final String CLASS_NAME = "className";
+	private static final String RESOURCE_CLASS = "resourceClass";
+	private static final String RESOURCE_WEIGHT = "resourceWeight";
+	private static final String TIMEOUT = "timeout";
+	private static final String BEFORE = "before";
+	private static final String AFTER = "after";
+	private static final String OPTIONAL_BEFORE = "optionalBefore";
+	private static final String OPTIONAL_AFTER = "optionalAfter";
+	private static final Set<String> DEPENDENCY_ELEMENTS = ImmutableSet.of(BEFORE, AFTER, OPTIONAL_BEFORE,
+			OPTIONAL_AFTER);
+
+	/**
+	 * Creates the readers of catalog files. Readers are created while holding its lock, because factories are not
+	 * guaranteed to be thread-safe.
+	 */
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	/**
+	 * Subsets of at most the size of the graph divided by this number are put in topological order by sorting their
+	 * positions. Larger subsets are marked in a bit set of all positions instead, which is linear in the graph size.
+	 */
+	private static final int SORTED_SUBSET_DIVISOR = 16;
+
+	/**
+	 * Commands by their dense id.
+	 */
+	private final ImmutableList<CommandClass> commands;
+	private final ImmutableMap<String, Integer> ids;
 
-	private final DirectedAcyclicGraph<CommandClass, DependencyEdge> commandGraph;
-	private final ImmutableMap<String, CommandClass> vertices;
+	/**
+	 * Dependencies as compressed sparse rows: the ids of the dependencies of the command with id {@code i} are stored
+	 * in {@code dependencyIds} from index {@code dependencyOffsets[i]} inclusive to {@code dependencyOffsets[i + 1]}
+	 * exclusive. A dependency is mandatory if its index is set in {@code mandatoryDependencies}.
+	 */
+	private final int[] dependencyOffsets;
+	private final int[] dependencyIds;
+	private final BitSet mandatoryDependencies;
 	private final ImmutableList<CommandClass> topologicalOrdering;
 
 	/**
-	 * Lazily calculated set of maximally connected components.
+	 * Position of each command in {@linkplain #topologicalOrdering} by id.
+	 */
+	private final int[] topologicalPositions;
+
+	/**
+	 * Whether the indexes of this graph have been built eagerly, see {@linkplain #freeze()}.
+	 */
+	private final boolean frozen;
+
+	/**
+	 * Dependency sets of each command if this graph is frozen, {@code null} otherwise.
+	 */
+	@Nullable
+	private final DependencySets dependencySets;
+
+	/**
+	 * Dependents of each command, see {@linkplain Dependents}. Built lazily unless this graph is frozen.
+	 */
+	private volatile Dependents dependents;
+
+	/**
+	 * Lazily built reachability index: the ids of all direct and indirect dependencies and dependents of each command
+	 * by id, once they have been asked for.
+	 */
+	private final AtomicReferenceArray<BitSet> transitiveDependencies;
+	private final AtomicReferenceArray<BitSet> transitiveDependents;
+
+	/**
+	 * Maximally connected component of each command by id. The ids of the members of component {@code c} are stored in
+	 * {@code componentMembers} from index {@code componentOffsets[c]} inclusive to {@code componentOffsets[c + 1]}
+	 * exclusive, in topological order.
+	 */
+	private final int[] componentIds;
+	private final int[] componentOffsets;
+	private final int[] componentMembers;
+
+	/**
+	 * Components by their number, materialized as {@linkplain CommandGraph}s once they have been asked for.
 	 */
-	private Set<CommandGraph> connectedComponents;
+	private final AtomicReferenceArray<CommandGraph> components;
+
+	/**
+	 * Set of maximally connected components. Calculated lazily unless this graph is frozen.
+	 */
+	private volatile Set<CommandGraph> connectedComponents;
 
 	/**
 	 * @return a builder to build a {@linkplain CommandGraph}
@@ -67,9 +164,17 @@ public class CommandGraph {
 		return new CommandGraphBuilder();
 	}
 
+	/**
+	 * @return a builder to build a {@linkplain CommandGraph} from many commands and dependencies at once
+	 */
+	public static BulkCommandGraphBuilder bulkBuilder() {
+		return new BulkCommandGraphBuilder();
+	}
+
 	/**
 	 * Create a new {@linkplain CommandGraph}. Parse the XML file and build a valid graph of {@linkplain CommandClass}
-	 * vertices and mandatory and optional dependencies, respectively.
+	 * vertices and mandatory and optional dependencies, respectively. The file is read as a stream, so that no
+	 * document tree of the catalog is held in memory.
 	 * <p>
 	 * Required node tag for every command entry in the given XML file is "command". Under those nodes the attributes
 	 * "name" and "className" are required. Every command name must be unique.
@@ -78,6 +183,17 @@ public class CommandGraph {
 	 * <li>"className" attribute contains the associated fully qualified name for this command as obtained by
 	 * {@linkplain Class#getCanonicalName()}. Command classes must be an implementation of {@linkplain Command}.
 	 * </ul>
+	 * The optional attributes "resourceClass" and "resourceWeight" declare which resource class a command mainly uses
+	 * and how much of its capacity, see {@linkplain CommandClass#getResourceClass()}. The weight must be a positive
+	 * integer and defaults to {@value CommandClass#DEFAULT_RESOURCE_WEIGHT}. The optional attribute "timeout" limits
+	 * how many milliseconds a single execution of the command may take, see {@linkplain CommandClass#getTimeoutMillis()}.
+	 * <p>
+	 * Dependencies can be declared in the catalog by the child elements "before", "after", "optionalBefore" and
+	 * "optionalAfter" of a command, each containing the name of one command. If a command has at least one of those
+	 * elements, only the catalog is used for its dependencies and an empty element declares that there are none.
+	 * Otherwise, dependencies are read from the generated {@linkplain CommandFactory} or the {@linkplain Dependencies}
+	 * annotation of the command class if available, and only as a last resort the command is instantiated to ask for
+	 * them.
 	 * An example catalog looks like this:<br>
 	 * {@code <catalog> <command name="command" className="de.commandmanager.command"/> </catalog>}
 	 * <p>
@@ -86,128 +202,314 @@ public class CommandGraph {
 	 *            {@linkplain File} to be parsed. Must have a valid XML structure.
 	 * @return An {@linkplain Try} that contains a {@linkplain CommandGraph} if every command of the given catalog
 	 *         could be added to the graph. In addition to that every dependency of every command must have been added
-	 *         to the graph. If any of those two actions failed, {@linkplain Try#isPresent()} returns false.
+	 *         to the graph. If any of those two actions failed, {@linkplain Try#isPresent()} returns false. If the
+	 *         dependencies contain cycles, the note is {@linkplain DependencyAdded#CYCLE_DETECTED}. Use
+	 *         {@linkplain #findCycles(File)} to find out which commands form the cycles.
 	 */
 	public static Try<CommandGraph> fromXml(File catalogFile) {
 		Check.notNull(catalogFile, "catalogFile");
 
-		Document document;
-		try {
-			DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			document = documentBuilder.parse(catalogFile);
-		} catch (Exception e) {
-			return new Try<CommandGraph>(null, e);
+		CatalogLoader loader = new CatalogLoader();
+		Object failure = read(loader, catalogFile);
+		if (failure != null) {
+			return new Try<CommandGraph>(null, failure);
 		}
-		return CommandGraph.fromDocument(document);
+		return loader.build();
 	}
 
 	/**
-	 * Loads a {@linkplain CommandGraph} from an XML {@linkplain Document}. See {@linkplain CommandGraph#fromXml(File)}.
+	 * Finds the cycles in the dependencies of the commands of the given catalog, which make
+	 * {@linkplain #fromXml(File)} fail with {@linkplain DependencyAdded#CYCLE_DETECTED}.
+	 *
+	 * @param catalogFile
+	 *            {@linkplain File} to be parsed. Must have a valid XML structure.
+	 * @return A {@linkplain Try} containing the names of the members of each strongly connected component that
+	 *         contains a cycle, see {@linkplain CyclicDependencyException#getCycles()}. The list is empty if there are
+	 *         no cycles. {@linkplain Try#isPresent()} returns false if the catalog cannot be read or a dependency
+	 *         cannot be added, like with {@linkplain #fromXml(File)}.
 	 */
-	public static Try<CommandGraph> fromDocument(Document catalogDocument) {
-		Check.notNull(catalogDocument, "catalogDocument");
+	public static Try<List<List<String>>> findCycles(File catalogFile) {
+		Check.notNull(catalogFile, "catalogFile");
 
-		List<CommandClass> commands = Lists.newLinkedList();
-		Iterable<Element> domElements = nodeListToElementList(catalogDocument.getElementsByTagName(COMMAND));
-		for (Element element : domElements) {
-			if (element.hasAttribute(NAME) && element.hasAttribute(CLASS_NAME)) {
-				commands.add(new CommandClass(element.getAttribute(NAME), element.getAttribute(CLASS_NAME)));
-			} else {
-				return new Try<CommandGraph>(null, "Name or class name missing in element: " + element);
-			}
+		CatalogLoader loader = new CatalogLoader();
+		Object failure = read(loader, catalogFile);
+		if (failure != null) {
+			return new Try<List<List<String>>>(null, failure);
 		}
-		return CommandGraph.of(commands);
+		Try<CommandGraph> graph = loader.buildReportingCycles();
+		if (graph.isPresent()) {
+			return new Try<List<List<String>>>(ImmutableList.<List<String>> of());
+		}
+		if (graph.getNote() instanceof CyclicDependencyException) {
+			return new Try<List<List<String>>>(((CyclicDependencyException) graph.getNote()).getCycles());
+		}
+		return new Try<List<List<String>>>(null, graph.getNote());
 	}
 
-	private static List<Element> nodeListToElementList(NodeList commandNodes) {
-		List<Element> commandElements = Lists.newLinkedList();
-
-		for (int currentNode = 0; currentNode < commandNodes.getLength(); currentNode++) {
-			Node node = commandNodes.item(currentNode);
-			if (node.getNodeType() == Node.ELEMENT_NODE) {
-				commandElements.add((Element) node);
+	/**
+	 * Reads all commands of the given catalog into the given loader.
+	 *
+	 * @return why the catalog cannot be read, or {@code null} if all commands could be added
+	 */
+	@Nullable
+	private static Object read(CatalogLoader loader, File catalogFile) {
+		try (InputStream input = new BufferedInputStream(new FileInputStream(catalogFile))) {
+			XMLStreamReader reader;
+			synchronized (XML_INPUT_FACTORY) {
+				reader = XML_INPUT_FACTORY.createXMLStreamReader(catalogFile.toURI().toString(), input);
 			}
+			try {
+				return loader.read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			return toSaxParseException(e, catalogFile);
+		} catch (Exception e) {
+			return e;
 		}
-		return commandElements;
 	}
 
-	private static Try<CommandGraph> of(Iterable<CommandClass> commands) {
-		Check.noNullElements(commands, "commands");
-		CommandGraphBuilder builder = new CommandGraphBuilder();
+	/**
+	 * Like {@linkplain #fromXml(File)}, but keeps a binary snapshot of the built graph in the given snapshot file. If
+	 * the snapshot has been written for the current state of the catalog, the graph is restored from it without
+	 * parsing the catalog or instantiating any command. Otherwise, the catalog is parsed and the snapshot is replaced.
+	 * <p>
+	 * The snapshot is validated against the modification time, size and content hash of the catalog, but not against
+	 * the command classes. It must be deleted when the dependencies declared by command classes change.
+	 *
+	 * @param catalogFile
+	 *            {@linkplain File} to be parsed. Must have a valid XML structure.
+	 * @param snapshotFile
+	 *            to restore the graph from or to write the graph to. Its directory must exist.
+	 * @return see {@linkplain #fromXml(File)}
+	 */
+	public static Try<CommandGraph> fromXml(File catalogFile, File snapshotFile) {
+		Check.notNull(catalogFile, "catalogFile");
+		Check.notNull(snapshotFile, "snapshotFile");
 
-		// add commands
-		for (CommandClass command : commands) {
-			if (!builder.addCommand(command)) {
-				return new Try<CommandGraph>(null, "Duplicate command: " + command);
+		Try<CommandGraph> snapshotGraph = GraphSnapshot.read(snapshotFile.toPath(), catalogFile);
+		if (snapshotGraph.isPresent()) {
+			return snapshotGraph;
+		}
+		logger.debug("Building graph from " + catalogFile + ": " + snapshotGraph.getNote());
+
+		GraphSnapshot snapshot;
+		try {
+			snapshot = GraphSnapshot.of(catalogFile);
+		} catch (IOException e) {
+			return new Try<CommandGraph>(null, e);
+		}
+		Try<CommandGraph> graph = fromXml(catalogFile);
+		if (graph.isPresent()) {
+			try {
+				snapshot.write(graph.get(), snapshotFile.toPath());
+			} catch (IOException e) {
+				logger.warn("Cannot write graph snapshot to " + snapshotFile + ": " + e);
 			}
 		}
+		return graph;
+	}
 
-		// add dependencies
-		for (CommandClass command : commands) {
-			Command commandInstance = command.newInstance();
-			String commandName = command.getName();
+	/**
+	 * Loads a {@linkplain CommandGraph} from an XML {@linkplain Document}. See {@linkplain CommandGraph#fromXml(File)}.
+	 */
+	public static Try<CommandGraph> fromDocument(Document catalogDocument) {
+		Check.notNull(catalogDocument, "catalogDocument");
 
-			for (String beforeDependency : commandInstance.getBeforeDependencies()) {
-				DependencyAdded dependencyAdded = builder.addMandatoryDependency(commandName, beforeDependency);
-				if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
-					return new Try<CommandGraph>(null, dependencyAdded);
-				}
+		CatalogLoader loader = new CatalogLoader();
+		NodeList commandNodes = catalogDocument.getElementsByTagName(COMMAND);
+		for (int currentNode = 0; currentNode < commandNodes.getLength(); currentNode++) {
+			Node node = commandNodes.item(currentNode);
+			if (node.getNodeType() != Node.ELEMENT_NODE) {
+				continue;
 			}
-
-			for (String afterDependency : commandInstance.getAfterDependencies()) {
-				DependencyAdded dependencyAdded = builder.addMandatoryDependency(afterDependency, commandName);
-				if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
-					return new Try<CommandGraph>(null, dependencyAdded);
-				}
+			Element element = (Element) node;
+			Map<String, String> attributes = Maps.newHashMap();
+			NamedNodeMap attributeNodes = element.getAttributes();
+			for (int attribute = 0; attribute < attributeNodes.getLength(); attribute++) {
+				attributes.put(attributeNodes.item(attribute).getNodeName(), attributeNodes.item(attribute)
+						.getNodeValue());
 			}
-
-			for (String beforeDependency : commandInstance.getOptionalBeforeDependencies()) {
-				// TODO currently, optional dependencies are seen from the graph building perspective,
-				// rather than from the executing perspective. This will change. See (#53)
-				if (builder.containsCommand(beforeDependency)) {
-					DependencyAdded dependencyAdded = builder.addOptionalDependency(commandName, beforeDependency);
-					if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
-						return new Try<CommandGraph>(null, dependencyAdded);
-					}
+			Map<String, Set<String>> dependencies = Maps.newHashMap();
+			NodeList children = element.getChildNodes();
+			for (int child = 0; child < children.getLength(); child++) {
+				if (children.item(child).getNodeType() == Node.ELEMENT_NODE) {
+					addDependency(dependencies, children.item(child).getNodeName(), children.item(child)
+							.getTextContent());
 				}
 			}
+			Object failure = loader.addCommand(attributes, dependencies, element);
+			if (failure != null) {
+				return new Try<CommandGraph>(null, failure);
+			}
+		}
+		return loader.build();
+	}
 
-			for (String afterDependency : commandInstance.getOptionalAfterDependencies()) {
-				// TODO currently, optional dependencies are seen from the graph building perspective,
-				// rather than from the executing perspective. This will change. See (#53)
-				if (builder.containsCommand(afterDependency)) {
-					DependencyAdded dependencyAdded = builder.addOptionalDependency(afterDependency, commandName);
-					if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
-						return new Try<CommandGraph>(null, dependencyAdded);
-					}
-				}
+	/**
+	 * Adds a dependency declared by a child element of a command element. Once a command element has one dependency
+	 * element, all kinds of dependencies are present in the map, so that empty elements declare empty sets.
+	 */
+	private static void addDependency(Map<String, Set<String>> dependencies, String elementName, String dependency) {
+		if (!DEPENDENCY_ELEMENTS.contains(elementName)) {
+			return;
+		}
+		if (dependencies.isEmpty()) {
+			for (String dependencyElement : DEPENDENCY_ELEMENTS) {
+				dependencies.put(dependencyElement, Sets.<String> newLinkedHashSet());
 			}
 		}
+		if (!dependency.trim().isEmpty()) {
+			dependencies.get(elementName).add(dependency.trim());
+		}
+	}
 
-		return new Try<CommandGraph>(builder.build());
+	/**
+	 * Keeps reporting malformed catalogs the way a DOM parser does.
+	 */
+	private static SAXParseException toSaxParseException(XMLStreamException e, File catalogFile) {
+		Location location = e.getLocation();
+		SAXParseException parseException = location == null ? new SAXParseException(e.getMessage(), null,
+				catalogFile.toURI().toString(), -1, -1) : new SAXParseException(e.getMessage(), location.getPublicId(),
+				location.getSystemId(), location.getLineNumber(), location.getColumnNumber());
+		parseException.initCause(e);
+		return parseException;
 	}
 
-	private CommandGraph(CommandGraphBuilder builder) {
+	private static CommandGraph fromBuilder(CommandGraphBuilder builder,
+			@Nullable List<CommandClass> topologicalOrdering, boolean frozen) {
 		Check.notNull(builder, "builder");
 		Check.notNull(builder.graph, "builder.graph");
 		Check.notNull(builder.commandClasses, "builder.commandClasses");
 
-		commandGraph = cloneGraph(builder.graph);
-		vertices = ImmutableMap.copyOf(builder.commandClasses);
-		topologicalOrdering = ImmutableList.copyOf(reverse(commandGraph.iterator()));
+		ImmutableList<CommandClass> commands = ImmutableList.copyOf(builder.commandClasses.values());
+		Map<String, Integer> ids = indexByName(commands);
+		int[] dependencyOffsets = new int[commands.size() + 1];
+		int[] dependencyIds = new int[builder.graph.edgeSet().size()];
+		BitSet mandatoryDependencies = new BitSet(dependencyIds.length);
+		int dependency = 0;
+		for (int id = 0; id < commands.size(); id++) {
+			dependencyOffsets[id] = dependency;
+			for (DependencyEdge edge : builder.graph.outgoingEdgesOf(commands.get(id))) {
+				dependencyIds[dependency] = ids.get(((CommandClass) edge.getTarget()).getName());
+				mandatoryDependencies.set(dependency, edge.isMandatory());
+				dependency++;
+			}
+		}
+		dependencyOffsets[commands.size()] = dependency;
+		return new CommandGraph(commands, dependencyOffsets, dependencyIds, mandatoryDependencies,
+				ImmutableList.copyOf(topologicalOrdering == null ? reverse(builder.graph.iterator())
+						: topologicalOrdering), builder.components.components(), frozen, null);
+	}
+
+	/**
+	 * @param componentIds
+	 *            see {@linkplain #componentIds}, or {@code null} to find the components of the given dependencies
+	 * @param frozen
+	 *            whether to build all indexes right away, see {@linkplain #freeze()}
+	 * @param inherited
+	 *            indexes taken over from the graph this graph is derived from, or {@code null}
+	 */
+	private CommandGraph(ImmutableList<CommandClass> commands, int[] dependencyOffsets, int[] dependencyIds,
+			BitSet mandatoryDependencies, ImmutableList<CommandClass> topologicalOrdering,
+			@Nullable int[] componentIds, boolean frozen, @Nullable Inherited inherited) {
+		this.commands = commands;
+		this.ids = indexByName(commands);
+		this.dependencyOffsets = dependencyOffsets;
+		this.dependencyIds = dependencyIds;
+		this.mandatoryDependencies = mandatoryDependencies;
+		this.topologicalOrdering = topologicalOrdering;
+		this.topologicalPositions = positionsOf(topologicalOrdering, ids);
+		transitiveDependencies = inherited == null ? new AtomicReferenceArray<BitSet>(commands.size())
+				: inherited.transitiveDependencies;
+		transitiveDependents = inherited == null ? new AtomicReferenceArray<BitSet>(commands.size())
+				: inherited.transitiveDependents;
+
+		this.componentIds = componentIds == null ? DisjointSets.of(dependencyOffsets, dependencyIds).components()
+				: componentIds;
+		int componentCount = 0;
+		for (int component : this.componentIds) {
+			componentCount = Math.max(componentCount, component + 1);
+		}
+		componentOffsets = new int[componentCount + 1];
+		for (int component : this.componentIds) {
+			componentOffsets[component + 1]++;
+		}
+		for (int component = 0; component < componentCount; component++) {
+			componentOffsets[component + 1] += componentOffsets[component];
+		}
+		componentMembers = new int[commands.size()];
+		int[] next = Arrays.copyOf(componentOffsets, componentCount);
+		for (CommandClass command : topologicalOrdering) {
+			int id = ids.get(command.getName());
+			componentMembers[next[this.componentIds[id]]++] = id;
+		}
+		components = inherited == null ? new AtomicReferenceArray<CommandGraph>(componentCount)
+				: inherited.components;
+
+		this.frozen = frozen;
+		if (frozen) {
+			dependencySets = inherited == null ? new DependencySets(this, null, null) : new DependencySets(this,
+					inherited.dependencySets, inherited.dependencySetOrigins);
+			dependents = new Dependents(commands.size(), dependencyOffsets, dependencyIds);
+			if (componentCount > 1) {
+				for (int component = 0; component < componentCount; component++) {
+					if (components.get(component) == null) {
+						components.set(component, materializeComponent(component));
+					}
+				}
+			}
+			connectedComponents = connectedComponentsOf();
+		} else {
+			dependencySets = null;
+		}
+	}
+
+	private static int[] positionsOf(List<CommandClass> topologicalOrdering, Map<String, Integer> ids) {
+		int[] positions = new int[topologicalOrdering.size()];
+		for (int position = 0; position < topologicalOrdering.size(); position++) {
+			positions[ids.get(topologicalOrdering.get(position).getName())] = position;
+		}
+		return positions;
 	}
 
-	private static DirectedAcyclicGraph<CommandClass, DependencyEdge> cloneGraph(
-			DirectedAcyclicGraph<CommandClass, DependencyEdge> original) {
-		DirectedAcyclicGraph<CommandClass, DependencyEdge> clone = new DirectedAcyclicGraph<CommandClass, DependencyEdge>(
-				DependencyEdge.class);
-		for (CommandClass command : original.vertexSet()) {
-			clone.addVertex(command);
+	/**
+	 * Creates a graph from its compressed sparse rows without a {@linkplain CommandGraphBuilder}.
+	 * 
+	 * @param topologicalOrdering
+	 *            of all commands, which also determines their ids
+	 * @param dependencyOffsets
+	 *            see {@linkplain #dependencyOffsets}
+	 * @param dependencyIds
+	 *            see {@linkplain #dependencyIds}. Each dependency must come before its dependent in the topological
+	 *            ordering.
+	 * @param mandatoryDependencies
+	 *            see {@linkplain #mandatoryDependencies}
+	 * @throws IllegalStateOfArgumentException
+	 *             if the arrays do not describe an acyclic graph in the given topological ordering
+	 */
+	static CommandGraph fromTopologicalOrdering(List<CommandClass> topologicalOrdering, int[] dependencyOffsets,
+			int[] dependencyIds, BitSet mandatoryDependencies) {
+		Check.stateIsTrue(dependencyOffsets.length == topologicalOrdering.size() + 1,
+				"dependencyOffsets must have an entry for each command");
+		for (int id = 0; id < topologicalOrdering.size(); id++) {
+			for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+				Check.stateIsTrue(dependencyIds[dependency] >= 0 && dependencyIds[dependency] < id,
+						"dependencies must come before their dependents");
+			}
 		}
-		for (DependencyEdge dependency : original.edgeSet()) {
-			clone.addEdge((CommandClass) dependency.getSource(), (CommandClass) dependency.getTarget(), dependency);
+		ImmutableList<CommandClass> commands = ImmutableList.copyOf(topologicalOrdering);
+		return new CommandGraph(commands, dependencyOffsets, dependencyIds, mandatoryDependencies, commands, null,
+				false, null);
+	}
+
+	private static ImmutableMap<String, Integer> indexByName(List<CommandClass> commands) {
+		ImmutableMap.Builder<String, Integer> ids = ImmutableMap.builder();
+		for (int id = 0; id < commands.size(); id++) {
+			ids.put(commands.get(id).getName(), id);
 		}
-		return clone;
+		return ids.build();
 	}
 
 	private static List<CommandClass> reverse(Iterator<CommandClass> iterator) {
@@ -221,14 +523,14 @@ public class CommandGraph {
 	 */
 	public boolean containsCommand(String commandName) {
 		Check.notNull(commandName, "commandName");
-		return vertices.containsKey(commandName);
+		return ids.containsKey(commandName);
 	}
 
 	/**
 	 * @return whether this {@linkplain CommandGraph} does not contain any vertices.
 	 */
 	public boolean isEmpty() {
-		return vertices.isEmpty();
+		return commands.isEmpty();
 	}
 
 	/**
@@ -241,7 +543,7 @@ public class CommandGraph {
 	 */
 	public CommandClass getCommandClass(String commandName) {
 		Check.notNull(commandName, "commandName");
-		return vertices.get(checkGraphContains(commandName));
+		return commands.get(idOf(commandName));
 	}
 
 	/**
@@ -256,8 +558,24 @@ public class CommandGraph {
 	 *             if no command can be found in this graph for the given {@code commandName}.
 	 */
 	public Set<CommandClass> getDependencies(String commandName) {
-		return ImmutableSet.copyOf(Iterables.concat(getMandatoryDependencies(commandName),
-				getOptionalDependencies(commandName)));
+		Check.notNull(commandName, "commandName");
+		int id = idOf(commandName);
+		return frozen ? dependencySets.all.get(id) : dependenciesOf(id);
+	}
+
+	private ImmutableSet<CommandClass> dependenciesOf(int id) {
+		ImmutableSet.Builder<CommandClass> result = ImmutableSet.builder();
+		for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+			if (mandatoryDependencies.get(dependency)) {
+				result.add(commands.get(dependencyIds[dependency]));
+			}
+		}
+		for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+			if (!mandatoryDependencies.get(dependency)) {
+				result.add(commands.get(dependencyIds[dependency]));
+			}
+		}
+		return result.build();
 	}
 
 	/**
@@ -271,7 +589,8 @@ public class CommandGraph {
 	 */
 	public Set<CommandClass> getMandatoryDependencies(String commandName) {
 		Check.notNull(commandName, "commandName");
-		return getDependenciesWithRequirementState(checkGraphContains(commandName), DependencyEdge.MANDATORY);
+		int id = idOf(commandName);
+		return frozen ? dependencySets.mandatory.get(id) : dependenciesOf(id, DependencyEdge.MANDATORY);
 	}
 
 	/**
@@ -285,20 +604,104 @@ public class CommandGraph {
 	 */
 	public Set<CommandClass> getOptionalDependencies(String commandName) {
 		Check.notNull(commandName, "commandName");
-		return getDependenciesWithRequirementState(checkGraphContains(commandName), DependencyEdge.OPTIONAL);
+		int id = idOf(commandName);
+		return frozen ? dependencySets.optional.get(id) : dependenciesOf(id, DependencyEdge.OPTIONAL);
 	}
 
-	private Set<CommandClass> getDependenciesWithRequirementState(String commandName, boolean mandatoryRequired) {
+	private ImmutableSet<CommandClass> dependenciesOf(int id, boolean mandatoryRequired) {
 		ImmutableSet.Builder<CommandClass> result = ImmutableSet.builder();
-		Set<DependencyEdge> dependencies = commandGraph.outgoingEdgesOf(vertices.get(commandName));
-		for (DependencyEdge dependency : dependencies) {
-			if (dependency.isMandatory() == mandatoryRequired) {
-				result.add(commandGraph.getEdgeTarget(dependency));
+		for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+			if (mandatoryDependencies.get(dependency) == mandatoryRequired) {
+				result.add(commands.get(dependencyIds[dependency]));
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * For a given {@code commandName} find all commands on which this command depends directly or indirectly, via
+	 * mandatory as well as optional dependencies.
+	 *
+	 * @param commandName
+	 *            to retrieve the transitive dependencies of
+	 * @return Commands that need to be considered before the given command, not including the command itself.
+	 * @throws CommandNotFoundException
+	 *             if no command can be found in this graph for the given {@code commandName}.
+	 */
+	public Set<CommandClass> getTransitiveDependencies(String commandName) {
+		Check.notNull(commandName, "commandName");
+		return commandsOf(transitiveClosure(idOf(commandName), dependencyOffsets, dependencyIds,
+				transitiveDependencies));
+	}
+
+	/**
+	 * For a given {@code commandName} find all commands which depend directly or indirectly on this command, via
+	 * mandatory as well as optional dependencies.
+	 *
+	 * @param commandName
+	 *            to retrieve the transitive dependents of
+	 * @return Commands that need to be considered after the given command, not including the command itself.
+	 * @throws CommandNotFoundException
+	 *             if no command can be found in this graph for the given {@code commandName}.
+	 */
+	public Set<CommandClass> getTransitiveDependents(String commandName) {
+		Check.notNull(commandName, "commandName");
+		Dependents dependents = getDependents();
+		return commandsOf(transitiveClosure(idOf(commandName), dependents.offsets, dependents.ids,
+				transitiveDependents));
+	}
+
+	/**
+	 * Looks up the transitive closure of a command in the given index. Missing closures are calculated from the
+	 * closures of the adjacent commands, without recursion, and added to the index.
+	 */
+	private static BitSet transitiveClosure(int id, int[] offsets, int[] adjacentIds,
+			AtomicReferenceArray<BitSet> index) {
+		Deque<Integer> stack = new ArrayDeque<Integer>();
+		stack.push(id);
+		while (!stack.isEmpty()) {
+			int current = stack.peek();
+			if (index.get(current) != null) {
+				stack.pop();
+				continue;
+			}
+			boolean adjacentClosuresKnown = true;
+			for (int adjacent = offsets[current]; adjacent < offsets[current + 1]; adjacent++) {
+				if (index.get(adjacentIds[adjacent]) == null) {
+					stack.push(adjacentIds[adjacent]);
+					adjacentClosuresKnown = false;
+				}
 			}
+			if (adjacentClosuresKnown) {
+				BitSet closure = new BitSet();
+				for (int adjacent = offsets[current]; adjacent < offsets[current + 1]; adjacent++) {
+					closure.set(adjacentIds[adjacent]);
+					closure.or(index.get(adjacentIds[adjacent]));
+				}
+				index.compareAndSet(current, null, closure);
+				stack.pop();
+			}
+		}
+		return index.get(id);
+	}
+
+	private Set<CommandClass> commandsOf(BitSet ids) {
+		ImmutableSet.Builder<CommandClass> result = ImmutableSet.builder();
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			result.add(commands.get(id));
 		}
 		return result.build();
 	}
 
+	private Dependents getDependents() {
+		Dependents result = dependents;
+		if (result == null) {
+			result = new Dependents(commands.size(), dependencyOffsets, dependencyIds);
+			dependents = result;
+		}
+		return result;
+	}
+
 	/**
 	 * Arrange all commands of this {@link CommandGraph} in a topological order, meaning that if there exists a
 	 * dependency from command A to command B then command B is guaranteed to come before command A in the iteration
@@ -366,12 +769,33 @@ public class CommandGraph {
 	 */
 	public List<CommandClass> topologicalOrderOf(Iterable<CommandClass> commands) {
 		Check.noNullElements(commands, "commands");
+		int[] positions = new int[Iterables.size(commands)];
+		int size = 0;
 		for (CommandClass command : commands) {
-			checkGraphContains(command.getName());
+			int id = idOf(command.getName());
+			if (this.commands.get(id).equals(command)) {
+				positions[size++] = topologicalPositions[id];
+			}
+		}
+
+		ImmutableList.Builder<CommandClass> order = ImmutableList.builder();
+		if (size > topologicalOrdering.size() / SORTED_SUBSET_DIVISOR) {
+			BitSet requested = new BitSet(topologicalOrdering.size());
+			for (int index = 0; index < size; index++) {
+				requested.set(positions[index]);
+			}
+			for (int position = requested.nextSetBit(0); position >= 0; position = requested.nextSetBit(position + 1)) {
+				order.add(topologicalOrdering.get(position));
+			}
+		} else {
+			Arrays.sort(positions, 0, size);
+			for (int index = 0; index < size; index++) {
+				if (index == 0 || positions[index] != positions[index - 1]) {
+					order.add(topologicalOrdering.get(positions[index]));
+				}
+			}
 		}
-		List<CommandClass> requestedCommands = ImmutableList.copyOf(commands);
-		Iterable<CommandClass> order = Iterables.filter(topologicalOrderOfAllCommands(), in(requestedCommands));
-		return ImmutableList.copyOf(order);
+		return order.build();
 	}
 
 	/**
@@ -390,109 +814,456 @@ public class CommandGraph {
 		return topologicalOrderOf(Arrays.asList(commands));
 	}
 
-	private String checkGraphContains(String command) {
-		if (!containsCommand(command)) {
+	private int idOf(String command) {
+		Integer id = ids.get(command);
+		if (id == null) {
 			throw new CommandNotFoundException(command);
 		}
-		return command;
+		return id;
 	}
 
 	/**
 	 * @return An immutable set of all maximally connected components in form of {@linkplain CommandGraph}s.
 	 */
 	public Set<CommandGraph> getConnectedComponents() {
-		if (connectedComponents == null) {
-			connectedComponents = computeConnectedComponents(commandGraph);
+		Set<CommandGraph> result = connectedComponents;
+		if (result == null) {
+			result = connectedComponentsOf();
+			connectedComponents = result;
 		}
-		return connectedComponents;
+		return result;
 	}
 
-	private static ImmutableSet<CommandGraph> computeConnectedComponents(
-			DirectedAcyclicGraph<CommandClass, DependencyEdge> graph) {
-		ConnectivityInspector<CommandClass, DependencyEdge> inspector = new ConnectivityInspector<CommandClass, DependencyEdge>(
-				graph);
+	private Set<CommandGraph> connectedComponentsOf() {
 		ImmutableSet.Builder<CommandGraph> result = ImmutableSet.builder();
-
-		for (Set<CommandClass> connectedSet : inspector.connectedSets()) {
-			CommandGraphBuilder component = CommandGraph.builder();
-			for (CommandClass commandClass : connectedSet) {
-				component.addCommand(commandClass);
-			}
-			for (DependencyEdge dependency : graph.edgeSet()) {
-				if (connectedSet.contains(dependency.getSource())) {
-					if (dependency.isMandatory()) {
-						component.addMandatoryDependency((CommandClass) dependency.getSource(),
-								(CommandClass) dependency.getTarget());
-					} else {
-						component.addOptionalDependency((CommandClass) dependency.getSource(),
-								(CommandClass) dependency.getTarget());
-					}
-				}
-			}
-			result.add(component.build());
+		for (int component = 0; component < components.length(); component++) {
+			result.add(component(component));
 		}
-
 		return result.build();
 	}
 
-	@Override
-	public String toString() {
-		return toDot();
+	/**
+	 * @param commandName
+	 *            of a command in this graph
+	 * @return The maximally connected component containing the given command in form of a {@linkplain CommandGraph}.
+	 * @throws CommandNotFoundException
+	 *             if no command can be found in this graph for the given {@code commandName}.
+	 */
+	public CommandGraph componentOf(String commandName) {
+		Check.notNull(commandName, "commandName");
+		return component(componentIds[idOf(commandName)]);
+	}
+
+	private CommandGraph component(int component) {
+		if (components.length() == 1) {
+			return this;
+		}
+		if (components.get(component) == null) {
+			components.compareAndSet(component, null, materializeComponent(component));
+		}
+		return components.get(component);
 	}
 
 	/**
-	 * @return This graph in DOT format. Dependencies are represented as edges with the dependent command as source,
-	 *         that is A -> B means that A depends on B. Mandatory dependencies will be drawn as solid lines while
-	 *         optional dependencies will be drawn as dashed lines.
+	 * Copies the members of a component into a graph of their own. Members are already stored in topological order,
+	 * so they are given ids in that order and the ids of their dependencies are found by the topological position.
 	 */
-	public String toDot() {
-		StringBuilder result = new StringBuilder();
-		result.append("digraph G {\n");
-		result.append(drawLabel("Command graph"));
-		result.append(getGraphLayout());
-
-		for (CommandClass command : vertices.values()) {
-			result.append(drawCommand(command));
-			result.append(drawMandatoryDependencies(command));
-			result.append(drawOptionalDependencies(command));
+	private CommandGraph materializeComponent(int component) {
+		int first = componentOffsets[component];
+		int size = componentOffsets[component + 1] - first;
+		int[] positions = new int[size];
+		ImmutableList.Builder<CommandClass> memberCommands = ImmutableList.builder();
+		int dependencies = 0;
+		for (int member = 0; member < size; member++) {
+			int id = componentMembers[first + member];
+			positions[member] = topologicalPositions[id];
+			memberCommands.add(commands.get(id));
+			dependencies += dependencyOffsets[id + 1] - dependencyOffsets[id];
+		}
+		int[] memberOffsets = new int[size + 1];
+		int[] memberDependencyIds = new int[dependencies];
+		BitSet memberMandatory = new BitSet(dependencies);
+		int dependency = 0;
+		for (int member = 0; member < size; member++) {
+			int id = componentMembers[first + member];
+			memberOffsets[member] = dependency;
+			for (int original = dependencyOffsets[id]; original < dependencyOffsets[id + 1]; original++) {
+				memberDependencyIds[dependency] = Arrays.binarySearch(positions,
+						topologicalPositions[dependencyIds[original]]);
+				memberMandatory.set(dependency, mandatoryDependencies.get(original));
+				dependency++;
+			}
 		}
+		memberOffsets[size] = dependency;
+		ImmutableList<CommandClass> members = memberCommands.build();
+		return new CommandGraph(members, memberOffsets, memberDependencyIds, memberMandatory, members, new int[size],
+				frozen, null);
+	}
 
-		result.append("}");
-		return result.toString();
+	/**
+	 * Returns a frozen variant of this graph. A frozen graph builds the dependency sets and dependents of all commands
+	 * and all of its connected components once, when it is created. Afterwards they are returned without any
+	 * allocation, which suits graphs that are shared between many threads. The frozen graph shares the dependencies of
+	 * this graph and is equal to it.
+	 *
+	 * @return A frozen graph, or this graph if it is frozen already.
+	 */
+	public CommandGraph freeze() {
+		return frozen ? this : new CommandGraph(commands, dependencyOffsets, dependencyIds, mandatoryDependencies,
+				topologicalOrdering, componentIds, true, null);
 	}
 
-	@Override
-	public int hashCode() {
-		return vertices.hashCode();
+	/**
+	 * @return {@code true} if this graph has been built by {@linkplain CommandGraphBuilder#buildFrozen()} or
+	 *         {@linkplain #freeze()}, {@code false} if its indexes are built on demand.
+	 */
+	public boolean isFrozen() {
+		return frozen;
 	}
 
-	@Override
-	public boolean equals(Object obj) {
-		if (this == obj) {
-			return true;
+	/**
+	 * Derives a graph which additionally contains the given commands, without any dependencies. Dependencies, cached
+	 * transitive dependencies and materialized components of this graph are shared with the derived graph instead of
+	 * being built again. This graph remains unchanged.
+	 *
+	 * @param commands
+	 *            to add. Their names must not be contained in this graph.
+	 * @return The derived graph, which is frozen if this graph is frozen.
+	 * @throws IllegalStateOfArgumentException
+	 *             if the name of a given command is contained in this graph or in the given commands more than once
+	 */
+	public CommandGraph withCommands(Iterable<CommandClass> commands) {
+		Check.noNullElements(commands, "commands");
+		List<CommandClass> added = Lists.newArrayList(commands);
+		if (added.isEmpty()) {
+			return this;
 		}
-		if (obj == null) {
-			return false;
+		Set<String> names = Sets.newHashSet();
+		for (CommandClass command : added) {
+			Check.stateIsTrue(!containsCommand(command.getName()) && names.add(command.getName()),
+					"commands must not be contained in the graph, yet");
 		}
-		if (!(obj instanceof CommandGraph)) {
-			return false;
+
+		int size = this.commands.size() + added.size();
+		int[] derivedOffsets = Arrays.copyOf(dependencyOffsets, size + 1);
+		Arrays.fill(derivedOffsets, this.commands.size() + 1, size + 1, dependencyIds.length);
+		int[] derivedComponentIds = Arrays.copyOf(componentIds, size);
+		for (int id = this.commands.size(); id < size; id++) {
+			derivedComponentIds[id] = components.length() + id - this.commands.size();
 		}
-		CommandGraph that = (CommandGraph) obj;
-		return this.commandGraph.equals(that.commandGraph);
+		Inherited inherited = new Inherited(size, components.length() + added.size(), identity(this.commands.size(),
+				size));
+		for (int id = 0; id < this.commands.size(); id++) {
+			inherited.transitiveDependencies.set(id, transitiveDependencies.get(id));
+			inherited.transitiveDependents.set(id, transitiveDependents.get(id));
+		}
+		for (int component = 0; component < components.length(); component++) {
+			inherited.components.set(component, components.length() == 1 ? this : components.get(component));
+		}
+		return new CommandGraph(ImmutableList.<CommandClass> builder().addAll(this.commands).addAll(added).build(),
+				derivedOffsets, dependencyIds, mandatoryDependencies, ImmutableList.<CommandClass> builder()
+						.addAll(topologicalOrdering).addAll(added).build(), derivedComponentIds, frozen, inherited);
 	}
 
-	private static String getGraphLayout() {
-		final StringBuilder result = new StringBuilder();
-		result.append(INDENTATION + "rankdir = BT;\n");
-		result.append(INDENTATION + "node [shape=record];\n");
-		result.append(INDENTATION + "edge [arrowhead=vee];\n");
-		return result.toString();
+	/**
+	 * Like {@linkplain #withCommands(Iterable)}.
+	 */
+	public CommandGraph withCommands(CommandClass... commands) {
+		return withCommands(Arrays.asList(Check.notNull(commands, "commands")));
 	}
 
-	private static String drawLabel(String label) {
-		final StringBuilder result = new StringBuilder();
-		result.append(INDENTATION + "labelloc = \"t\";\n");
-		result.append(INDENTATION + "label = \"" + label + "\";\n");
+	/**
+	 * Derives a graph without the given commands and without all dependencies from or to them. Components which do not
+	 * contain any of the given commands are shared with the derived graph. This graph remains unchanged.
+	 *
+	 * @param commandNames
+	 *            of the commands to remove
+	 * @return The derived graph, which is frozen if this graph is frozen.
+	 * @throws CommandNotFoundException
+	 *             if no command can be found in this graph for a given command name.
+	 */
+	public CommandGraph withoutCommands(Iterable<String> commandNames) {
+		Check.noNullElements(commandNames, "commandNames");
+		BitSet removed = new BitSet(commands.size());
+		for (String commandName : commandNames) {
+			removed.set(idOf(commandName));
+		}
+		if (removed.isEmpty()) {
+			return this;
+		}
+
+		int[] derivedIds = new int[commands.size()];
+		ImmutableList.Builder<CommandClass> derivedCommands = ImmutableList.builder();
+		int size = 0;
+		int dependencies = 0;
+		for (int id = 0; id < commands.size(); id++) {
+			derivedIds[id] = removed.get(id) ? -1 : size++;
+			if (!removed.get(id)) {
+				derivedCommands.add(commands.get(id));
+				for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+					dependencies += removed.get(dependencyIds[dependency]) ? 0 : 1;
+				}
+			}
+		}
+		int[] derivedOffsets = new int[size + 1];
+		int[] derivedDependencyIds = new int[dependencies];
+		BitSet derivedMandatory = new BitSet(dependencies);
+		int[] dependencySetOrigins = new int[size];
+		int derivedDependency = 0;
+		for (int id = removed.nextClearBit(0); id < commands.size(); id = removed.nextClearBit(id + 1)) {
+			derivedOffsets[derivedIds[id]] = derivedDependency;
+			dependencySetOrigins[derivedIds[id]] = id;
+			for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+				if (removed.get(dependencyIds[dependency])) {
+					dependencySetOrigins[derivedIds[id]] = -1;
+				} else {
+					derivedDependencyIds[derivedDependency] = derivedIds[dependencyIds[dependency]];
+					derivedMandatory.set(derivedDependency, mandatoryDependencies.get(dependency));
+					derivedDependency++;
+				}
+			}
+		}
+		derivedOffsets[size] = derivedDependency;
+		ImmutableList.Builder<CommandClass> derivedOrdering = ImmutableList.builder();
+		for (CommandClass command : topologicalOrdering) {
+			if (!removed.get(ids.get(command.getName()))) {
+				derivedOrdering.add(command);
+			}
+		}
+
+		int[] derivedComponentIds = DisjointSets.of(derivedOffsets, derivedDependencyIds).components();
+		BitSet changedComponents = new BitSet(components.length());
+		for (int id = removed.nextSetBit(0); id >= 0; id = removed.nextSetBit(id + 1)) {
+			changedComponents.set(componentIds[id]);
+		}
+		int componentCount = 0;
+		for (int component : derivedComponentIds) {
+			componentCount = Math.max(componentCount, component + 1);
+		}
+		Inherited inherited = new Inherited(size, componentCount, dependencySetOrigins);
+		for (int component = 0; component < components.length(); component++) {
+			if (changedComponents.get(component)) {
+				continue;
+			}
+			int member = derivedIds[componentMembers[componentOffsets[component]]];
+			inherited.components.set(derivedComponentIds[member], components.get(component));
+		}
+		return new CommandGraph(derivedCommands.build(), derivedOffsets, derivedDependencyIds, derivedMandatory,
+				derivedOrdering.build(), derivedComponentIds, frozen, inherited);
+	}
+
+	/**
+	 * Like {@linkplain #withoutCommands(Iterable)}.
+	 */
+	public CommandGraph withoutCommands(String... commandNames) {
+		return withoutCommands(Arrays.asList(Check.notNull(commandNames, "commandNames")));
+	}
+
+	/**
+	 * Derives a graph with an additional dependency from {@code sourceName} to {@code targetName}, following the rules
+	 * of {@linkplain CommandGraphBuilder#addMandatoryDependency(String, String)} and
+	 * {@linkplain CommandGraphBuilder#addOptionalDependency(String, String)}. Unless the dependency has to be moved
+	 * before its source, the topological ordering is shared with the derived graph. So are all cached transitive
+	 * dependencies and materialized components that are not affected by the new dependency. This graph remains
+	 * unchanged.
+	 *
+	 * @param sourceName
+	 *            the dependent command
+	 * @param targetName
+	 *            the command {@code sourceName} depends on
+	 * @param mandatory
+	 *            whether the dependency is mandatory or optional
+	 * @return The derived graph, which is frozen if this graph is frozen, or this graph if the dependency is present
+	 *         already. If the dependency cannot be added, the note is {@linkplain DependencyAdded#COMMAND_MISSING} or
+	 *         {@linkplain DependencyAdded#CYCLE_DETECTED}.
+	 */
+	public Try<CommandGraph> withDependency(String sourceName, String targetName, boolean mandatory) {
+		Check.notNull(sourceName, "sourceName");
+		Check.notNull(targetName, "targetName");
+		if (!containsCommand(sourceName) || !containsCommand(targetName)) {
+			return new Try<CommandGraph>(null, DependencyAdded.COMMAND_MISSING);
+		}
+		int source = ids.get(sourceName);
+		int target = ids.get(targetName);
+
+		int existing = -1;
+		for (int dependency = dependencyOffsets[source]; dependency < dependencyOffsets[source + 1]; dependency++) {
+			existing = dependencyIds[dependency] == target ? dependency : existing;
+		}
+		if (existing >= 0 && (!mandatory || mandatoryDependencies.get(existing))) {
+			return new Try<CommandGraph>(this);
+		}
+		if (existing < 0 && (source == target || transitiveClosure(target, dependencyOffsets, dependencyIds,
+				transitiveDependencies).get(source))) {
+			return new Try<CommandGraph>(null, DependencyAdded.CYCLE_DETECTED);
+		}
+
+		int[] derivedOffsets = dependencyOffsets;
+		int[] derivedDependencyIds = dependencyIds;
+		BitSet derivedMandatory = (BitSet) mandatoryDependencies.clone();
+		if (existing >= 0) {
+			derivedMandatory.set(existing);
+		} else {
+			derivedOffsets = dependencyOffsets.clone();
+			for (int id = source + 1; id <= commands.size(); id++) {
+				derivedOffsets[id]++;
+			}
+			int inserted = dependencyOffsets[source + 1];
+			derivedDependencyIds = new int[dependencyIds.length + 1];
+			System.arraycopy(dependencyIds, 0, derivedDependencyIds, 0, inserted);
+			derivedDependencyIds[inserted] = target;
+			System.arraycopy(dependencyIds, inserted, derivedDependencyIds, inserted + 1, dependencyIds.length
+					- inserted);
+			derivedMandatory.clear(inserted, dependencyIds.length + 1);
+			BitSet shifted = mandatoryDependencies.get(inserted, dependencyIds.length);
+			for (int moved = shifted.nextSetBit(0); moved >= 0; moved = shifted.nextSetBit(moved + 1)) {
+				derivedMandatory.set(inserted + moved + 1);
+			}
+			derivedMandatory.set(inserted, mandatory);
+		}
+
+		// merging the components of source and target renumbers all components after the merged one
+		int kept = Math.min(componentIds[source], componentIds[target]);
+		int merged = Math.max(componentIds[source], componentIds[target]);
+		int[] derivedComponentIds = componentIds;
+		if (kept != merged) {
+			derivedComponentIds = new int[commands.size()];
+			for (int id = 0; id < commands.size(); id++) {
+				int component = componentIds[id];
+				derivedComponentIds[id] = component == merged ? kept : component > merged ? component - 1 : component;
+			}
+		}
+		int[] dependencySetOrigins = identity(commands.size(), commands.size());
+		dependencySetOrigins[source] = -1;
+		Inherited inherited = new Inherited(commands.size(), components.length() - (kept == merged ? 0 : 1),
+				dependencySetOrigins);
+		for (int id = 0; id < commands.size(); id++) {
+			BitSet dependencies = transitiveDependencies.get(id);
+			if (dependencies != null && id != source && !dependencies.get(source)) {
+				inherited.transitiveDependencies.set(id, dependencies);
+			}
+			BitSet dependents = transitiveDependents.get(id);
+			if (dependents != null && id != target && !dependents.get(target)) {
+				inherited.transitiveDependents.set(id, dependents);
+			}
+		}
+		if (components.length() > 1) {
+			for (int component = 0; component < components.length(); component++) {
+				if (component != kept && component != merged) {
+					inherited.components.set(component > merged ? component - 1 : component, components.get(component));
+				}
+			}
+		}
+		return new Try<CommandGraph>(new CommandGraph(commands, derivedOffsets, derivedDependencyIds,
+				derivedMandatory, orderingWithDependency(source, target), derivedComponentIds, frozen, inherited));
+	}
+
+	/**
+	 * Keeps the topological ordering if {@code target} comes before {@code source} already. Otherwise moves
+	 * {@code target} and its transitive dependencies that come after {@code source} right in front of {@code source},
+	 * keeping their relative order.
+	 */
+	private ImmutableList<CommandClass> orderingWithDependency(int source, int target) {
+		int first = topologicalPositions[source];
+		int last = topologicalPositions[target];
+		if (last < first) {
+			return topologicalOrdering;
+		}
+		BitSet targetDependencies = transitiveClosure(target, dependencyOffsets, dependencyIds, transitiveDependencies);
+		List<CommandClass> moved = Lists.newArrayList();
+		List<CommandClass> remaining = Lists.newArrayList();
+		for (CommandClass command : topologicalOrdering.subList(first, last + 1)) {
+			int id = ids.get(command.getName());
+			(id == target || targetDependencies.get(id) ? moved : remaining).add(command);
+		}
+		return ImmutableList.<CommandClass> builder().addAll(topologicalOrdering.subList(0, first)).addAll(moved)
+				.addAll(remaining).addAll(topologicalOrdering.subList(last + 1, topologicalOrdering.size())).build();
+	}
+
+	private static int[] identity(int count, int size) {
+		int[] result = new int[size];
+		Arrays.fill(result, -1);
+		for (int id = 0; id < count; id++) {
+			result[id] = id;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return toDot();
+	}
+
+	/**
+	 * @return This graph in DOT format. Dependencies are represented as edges with the dependent command as source,
+	 *         that is A -> B means that A depends on B. Mandatory dependencies will be drawn as solid lines while
+	 *         optional dependencies will be drawn as dashed lines.
+	 */
+	public String toDot() {
+		StringBuilder result = new StringBuilder();
+		result.append("digraph G {\n");
+		result.append(drawLabel("Command graph"));
+		result.append(getGraphLayout());
+
+		for (CommandClass command : commands) {
+			result.append(drawCommand(command));
+			result.append(drawMandatoryDependencies(command));
+			result.append(drawOptionalDependencies(command));
+		}
+
+		result.append("}");
+		return result.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		int result = 0;
+		for (CommandClass command : commands) {
+			result += command.hashCode();
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (!(obj instanceof CommandGraph)) {
+			return false;
+		}
+		CommandGraph that = (CommandGraph) obj;
+		if (this.commands.size() != that.commands.size() || this.dependencyIds.length != that.dependencyIds.length) {
+			return false;
+		}
+		for (int id = 0; id < commands.size(); id++) {
+			Integer thatId = that.ids.get(commands.get(id).getName());
+			if (thatId == null || !commands.get(id).equals(that.commands.get(thatId))
+					|| !dependenciesOf(id, DependencyEdge.MANDATORY).equals(
+							that.dependenciesOf(thatId, DependencyEdge.MANDATORY))
+					|| !dependenciesOf(id, DependencyEdge.OPTIONAL).equals(
+							that.dependenciesOf(thatId, DependencyEdge.OPTIONAL))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String getGraphLayout() {
+		final StringBuilder result = new StringBuilder();
+		result.append(INDENTATION + "rankdir = BT;\n");
+		result.append(INDENTATION + "node [shape=record];\n");
+		result.append(INDENTATION + "edge [arrowhead=vee];\n");
+		return result.toString();
+	}
+
+	private static String drawLabel(String label) {
+		final StringBuilder result = new StringBuilder();
+		result.append(INDENTATION + "labelloc = \"t\";\n");
+		result.append(INDENTATION + "label = \"" + label + "\";\n");
 		return result.toString();
 	}
 
@@ -526,6 +1297,327 @@ public class CommandGraph {
 		return result.toString();
 	}
 
+	/**
+	 * All, mandatory and optional dependencies of each command of a frozen graph by id.
+	 */
+	private static final class DependencySets {
+
+		final ImmutableList<ImmutableSet<CommandClass>> all;
+		final ImmutableList<ImmutableSet<CommandClass>> mandatory;
+		final ImmutableList<ImmutableSet<CommandClass>> optional;
+
+		/**
+		 * @param previous
+		 *            dependency sets of the graph the given graph is derived from, or {@code null}
+		 * @param origins
+		 *            for each id of the given graph the id in {@code previous} whose sets are still valid, or -1
+		 */
+		DependencySets(CommandGraph graph, @Nullable DependencySets previous, @Nullable int[] origins) {
+			ImmutableList.Builder<ImmutableSet<CommandClass>> all = ImmutableList.builder();
+			ImmutableList.Builder<ImmutableSet<CommandClass>> mandatory = ImmutableList.builder();
+			ImmutableList.Builder<ImmutableSet<CommandClass>> optional = ImmutableList.builder();
+			for (int id = 0; id < graph.commands.size(); id++) {
+				if (previous != null && origins[id] >= 0) {
+					all.add(previous.all.get(origins[id]));
+					mandatory.add(previous.mandatory.get(origins[id]));
+					optional.add(previous.optional.get(origins[id]));
+				} else {
+					all.add(graph.dependenciesOf(id));
+					mandatory.add(graph.dependenciesOf(id, DependencyEdge.MANDATORY));
+					optional.add(graph.dependenciesOf(id, DependencyEdge.OPTIONAL));
+				}
+			}
+			this.all = all.build();
+			this.mandatory = mandatory.build();
+			this.optional = optional.build();
+		}
+
+	}
+
+	/**
+	 * Indexes a derived graph takes over from the graph it is derived from. Entries which are {@code null} are built
+	 * like in any other graph.
+	 */
+	private final class Inherited {
+
+		final AtomicReferenceArray<BitSet> transitiveDependencies;
+		final AtomicReferenceArray<BitSet> transitiveDependents;
+		final AtomicReferenceArray<CommandGraph> components;
+		@Nullable
+		final DependencySets dependencySets;
+
+		/**
+		 * For each id of the derived graph the id in the deriving graph whose dependency sets are still valid, or -1.
+		 */
+		final int[] dependencySetOrigins;
+
+		Inherited(int size, int componentCount, int[] dependencySetOrigins) {
+			transitiveDependencies = new AtomicReferenceArray<BitSet>(size);
+			transitiveDependents = new AtomicReferenceArray<BitSet>(size);
+			components = new AtomicReferenceArray<CommandGraph>(componentCount);
+			dependencySets = CommandGraph.this.dependencySets;
+			this.dependencySetOrigins = dependencySetOrigins;
+		}
+
+	}
+
+	/**
+	 * Union-find over dense ids with path halving and union by size, which indexes maximally connected components.
+	 */
+	private static final class DisjointSets {
+
+		private int[] parents = new int[16];
+		private int[] sizes = new int[16];
+		private int size;
+
+		static DisjointSets of(int[] dependencyOffsets, int[] dependencyIds) {
+			DisjointSets result = new DisjointSets();
+			for (int id = 0; id < dependencyOffsets.length - 1; id++) {
+				result.add();
+			}
+			for (int id = 0; id < dependencyOffsets.length - 1; id++) {
+				for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+					result.union(id, dependencyIds[dependency]);
+				}
+			}
+			return result;
+		}
+
+		int add() {
+			if (size == parents.length) {
+				parents = Arrays.copyOf(parents, size * 2);
+				sizes = Arrays.copyOf(sizes, size * 2);
+			}
+			parents[size] = size;
+			sizes[size] = 1;
+			return size++;
+		}
+
+		int find(int element) {
+			while (parents[element] != element) {
+				parents[element] = parents[parents[element]];
+				element = parents[element];
+			}
+			return element;
+		}
+
+		void union(int first, int second) {
+			int firstRoot = find(first);
+			int secondRoot = find(second);
+			if (firstRoot == secondRoot) {
+				return;
+			}
+			if (sizes[firstRoot] < sizes[secondRoot]) {
+				int swap = firstRoot;
+				firstRoot = secondRoot;
+				secondRoot = swap;
+			}
+			parents[secondRoot] = firstRoot;
+			sizes[firstRoot] += sizes[secondRoot];
+		}
+
+		/**
+		 * @return The component number of each element. Components are numbered densely in order of their first
+		 *         element.
+		 */
+		int[] components() {
+			int[] result = new int[size];
+			int[] numbers = new int[size];
+			Arrays.fill(numbers, -1);
+			int components = 0;
+			for (int element = 0; element < size; element++) {
+				int root = find(element);
+				if (numbers[root] < 0) {
+					numbers[root] = components++;
+				}
+				result[element] = numbers[root];
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * Dependents of each command as compressed sparse rows, the reverse of the dependencies of a graph.
+	 */
+	private static final class Dependents {
+
+		final int[] offsets;
+		final int[] ids;
+
+		Dependents(int size, int[] dependencyOffsets, int[] dependencyIds) {
+			offsets = new int[size + 1];
+			for (int dependency : dependencyIds) {
+				offsets[dependency + 1]++;
+			}
+			for (int id = 0; id < size; id++) {
+				offsets[id + 1] += offsets[id];
+			}
+			ids = new int[dependencyIds.length];
+			int[] next = Arrays.copyOf(offsets, size);
+			for (int id = 0; id < size; id++) {
+				for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+					ids[next[dependencyIds[dependency]]++] = id;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Builds a {@linkplain CommandGraph} while a catalog is read. Commands are added as vertices as soon as they are
+	 * read, their dependencies are added once all commands are known.
+	 */
+	private static final class CatalogLoader {
+
+		private final BulkCommandGraphBuilder builder = new BulkCommandGraphBuilder();
+		private final List<CommandClass> commands = Lists.newArrayList();
+		private final Map<CommandClass, CommandFactory> declaredDependencies = Maps.newHashMap();
+
+		/**
+		 * Reads all command elements from the given reader.
+		 * 
+		 * @return why the catalog is invalid, or {@code null} if all commands could be added
+		 */
+		@Nullable
+		Object read(XMLStreamReader reader) throws XMLStreamException {
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !COMMAND.equals(reader.getLocalName())) {
+					continue;
+				}
+				int line = reader.getLocation().getLineNumber();
+				Map<String, String> attributes = Maps.newHashMap();
+				for (int attribute = 0; attribute < reader.getAttributeCount(); attribute++) {
+					attributes.put(reader.getAttributeLocalName(attribute), reader.getAttributeValue(attribute));
+				}
+				Map<String, Set<String>> dependencies = Maps.newHashMap();
+				for (int depth = 1; depth > 0;) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT && depth == 1
+							&& DEPENDENCY_ELEMENTS.contains(reader.getLocalName())) {
+						addDependency(dependencies, reader.getLocalName(), reader.getElementText());
+					} else if (event == XMLStreamConstants.START_ELEMENT) {
+						depth++;
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						depth--;
+					}
+				}
+				Object failure = addCommand(attributes, dependencies, "<" + COMMAND + " " + attributes + "> in line "
+						+ line);
+				if (failure != null) {
+					return failure;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @param attributes
+		 *            of the command element
+		 * @param dependencies
+		 *            declared by the children of the command element by element name
+		 * @param element
+		 *            describing the command element in failure notes
+		 * @return why the command cannot be added, or {@code null} if it was added
+		 */
+		@Nullable
+		Object addCommand(Map<String, String> attributes, Map<String, Set<String>> dependencies, Object element) {
+			if (!attributes.containsKey(NAME) || !attributes.containsKey(CLASS_NAME)) {
+				return "Name or class name missing in element: " + element;
+			}
+			Integer resourceWeight = CommandClass.DEFAULT_RESOURCE_WEIGHT;
+			if (attributes.containsKey(RESOURCE_WEIGHT)) {
+				resourceWeight = Ints.tryParse(attributes.get(RESOURCE_WEIGHT));
+				if (resourceWeight == null || resourceWeight <= 0) {
+					return "Resource weight is not a positive integer in element: " + element;
+				}
+			}
+			Long timeoutMillis = CommandClass.NO_TIMEOUT;
+			if (attributes.containsKey(TIMEOUT)) {
+				timeoutMillis = Longs.tryParse(attributes.get(TIMEOUT));
+				if (timeoutMillis == null || timeoutMillis <= 0) {
+					return "Timeout is not a positive integer in element: " + element;
+				}
+			}
+			CommandClass command = new CommandClass(attributes.get(NAME), attributes.get(CLASS_NAME),
+					attributes.get(RESOURCE_CLASS), resourceWeight, timeoutMillis);
+			if (!builder.addCommand(command)) {
+				return "Duplicate command: " + command;
+			}
+			commands.add(command);
+
+			if (!dependencies.isEmpty()) {
+				declaredDependencies.put(command, command.declareDependencies(dependencies.get(BEFORE),
+						dependencies.get(AFTER), dependencies.get(OPTIONAL_BEFORE), dependencies.get(OPTIONAL_AFTER)));
+			}
+			return null;
+		}
+
+		/**
+		 * Adds the dependencies of all commands that have been read. Cycles are reported as
+		 * {@linkplain DependencyAdded#CYCLE_DETECTED}, which callers of the catalog methods check for.
+		 */
+		Try<CommandGraph> build() {
+			Try<CommandGraph> graph = buildReportingCycles();
+			if (graph.getNote() instanceof CyclicDependencyException) {
+				logger.error(((CyclicDependencyException) graph.getNote()).getMessage());
+				return new Try<CommandGraph>(null, DependencyAdded.CYCLE_DETECTED);
+			}
+			return graph;
+		}
+
+		/**
+		 * Adds the dependencies of all commands that have been read. Cycles are reported as
+		 * {@linkplain CyclicDependencyException}.
+		 */
+		Try<CommandGraph> buildReportingCycles() {
+			for (CommandClass command : commands) {
+				CommandFactory factory = declaredDependencies.containsKey(command) ? declaredDependencies.get(command)
+						: command.getFactory();
+				String commandName = command.getName();
+
+				for (String beforeDependency : factory.getBeforeDependencies()) {
+					DependencyAdded dependencyAdded = builder.addMandatoryDependency(commandName, beforeDependency);
+					if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
+						return new Try<CommandGraph>(null, dependencyAdded);
+					}
+				}
+
+				for (String afterDependency : factory.getAfterDependencies()) {
+					DependencyAdded dependencyAdded = builder.addMandatoryDependency(afterDependency, commandName);
+					if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
+						return new Try<CommandGraph>(null, dependencyAdded);
+					}
+				}
+
+				for (String beforeDependency : factory.getOptionalBeforeDependencies()) {
+					// TODO currently, optional dependencies are seen from the graph building perspective,
+					// rather than from the executing perspective. This will change. See (#53)
+					if (builder.containsCommand(beforeDependency)) {
+						DependencyAdded dependencyAdded = builder.addOptionalDependency(commandName, beforeDependency);
+						if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
+							return new Try<CommandGraph>(null, dependencyAdded);
+						}
+					}
+				}
+
+				for (String afterDependency : factory.getOptionalAfterDependencies()) {
+					// TODO currently, optional dependencies are seen from the graph building perspective,
+					// rather than from the executing perspective. This will change. See (#53)
+					if (builder.containsCommand(afterDependency)) {
+						DependencyAdded dependencyAdded = builder.addOptionalDependency(afterDependency, commandName);
+						if (dependencyAdded.isIn(DependencyAdded.FAILURE_STATES)) {
+							return new Try<CommandGraph>(null, dependencyAdded);
+						}
+					}
+				}
+			}
+
+			return builder.build();
+		}
+
+	}
+
 	/**
 	 * A builder for a {@linkplain CommandGraph}. It can be used to add vertices and edges (mandatory or optional
 	 * dependencies). The built graph is going to be immutable.
@@ -535,11 +1627,19 @@ public class CommandGraph {
 		private final Map<String, CommandClass> commandClasses;
 		private final DirectedAcyclicGraph<CommandClass, DependencyEdge> graph;
 
+		/**
+		 * Ids of the added commands in order of addition, and the connected components they form so far.
+		 */
+		private final Map<String, Integer> ids;
+		private final DisjointSets components;
+
 		/**
 		 * Creates a new empty {@linkplain CommandGraphBuilder}.
 		 */
 		public CommandGraphBuilder() {
-			commandClasses = Maps.newHashMap();
+			commandClasses = Maps.newLinkedHashMap();
+			ids = Maps.newHashMap();
+			components = new DisjointSets();
 			graph = new DirectedAcyclicGraph<CommandClass, CommandGraph.DependencyEdge>(DependencyEdge.class);
 		}
 
@@ -563,7 +1663,25 @@ public class CommandGraph {
 		 *         added to the builder.
 		 */
 		public CommandGraph build() {
-			return new CommandGraph(this);
+			return fromBuilder(this, null, false);
+		}
+
+		/**
+		 * @return Like {@linkplain #build()}, but the graph is frozen, see {@linkplain CommandGraph#freeze()}.
+		 */
+		public CommandGraph buildFrozen() {
+			return fromBuilder(this, null, true);
+		}
+
+		/**
+		 * @param topologicalOrdering
+		 *            of all added commands, which must be consistent with the added dependencies
+		 * @return like {@linkplain #build()}, but keeping the given ordering
+		 */
+		CommandGraph build(List<CommandClass> topologicalOrdering) {
+			Check.stateIsTrue(topologicalOrdering.size() == commandClasses.size(),
+					"topologicalOrdering must contain all commands");
+			return fromBuilder(this, topologicalOrdering, false);
 		}
 
 		/**
@@ -595,6 +1713,7 @@ public class CommandGraph {
 			}
 
 			commandClasses.put(commandClass.getName(), commandClass);
+			ids.put(commandClass.getName(), components.add());
 			return graph.addVertex(commandClass);
 		}
 
@@ -670,6 +1789,7 @@ public class CommandGraph {
 				}
 			} else {
 				graph.addDagEdge(source, target, new DependencyEdge(DependencyEdge.MANDATORY));
+				components.union(ids.get(source.getName()), ids.get(target.getName()));
 				return DependencyAdded.SUCCESSFUL;
 			}
 		}
@@ -731,6 +1851,7 @@ public class CommandGraph {
 		private DependencyAdded addOptionalDependencyOfPresentCommands(CommandClass source, CommandClass target)
 				throws CycleFoundException {
 			if (graph.addDagEdge(source, target, new DependencyEdge(DependencyEdge.OPTIONAL))) {
+				components.union(ids.get(source.getName()), ids.get(target.getName()));
 				return DependencyAdded.SUCCESSFUL;
 			} else {
 				return DependencyAdded.MANDATORY_NOT_OVERWRITTEN;
@@ -738,6 +1859,270 @@ public class CommandGraph {
 		}
 	}
 
+	/**
+	 * A builder for a {@linkplain CommandGraph} which accepts all commands and dependencies first and checks them once,
+	 * when the graph is built. Unlike {@linkplain CommandGraphBuilder}, adding a dependency does not look for cycles,
+	 * so building takes time linear in the number of commands and dependencies. If there are cycles, all of them are
+	 * reported.
+	 */
+	public static class BulkCommandGraphBuilder {
+
+		private final List<CommandClass> commands = Lists.newArrayList();
+		private final Map<String, Integer> ids = Maps.newHashMap();
+
+		/**
+		 * Dependencies in order of addition: dependency {@code i} leads from {@code sources[i]} to {@code targets[i]}
+		 * and is mandatory if {@code i} is set in {@code mandatory}. {@code dependencies} finds the index of a
+		 * dependency by its source and target.
+		 */
+		private final Map<Long, Integer> dependencies = Maps.newHashMap();
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private final BitSet mandatory = new BitSet();
+		private int size;
+
+		/**
+		 * Add a command with the given {@code name} and the given {@code className} to this builder.
+		 *
+		 * @param name
+		 *            must not be contained in this builder, yet.
+		 * @param className
+		 * @return {@code true} if the command could be added, {@code false} if another command with the given
+		 *         {@code name} has been added before.
+		 */
+		public boolean addCommand(String name, String className) {
+			return addCommand(new CommandClass(Check.notNull(name, "name"), Check.notNull(className, "className")));
+		}
+
+		/**
+		 * Add the given command to this builder.
+		 *
+		 * @param commandClass
+		 *            to add
+		 * @return {@code true} if the command could be added, {@code false} if another command with the name of the
+		 *         given {@code commandClass} has been added before.
+		 */
+		public boolean addCommand(CommandClass commandClass) {
+			Check.notNull(commandClass, "commandClass");
+			if (containsCommand(commandClass.getName())) {
+				return false;
+			}
+			ids.put(commandClass.getName(), commands.size());
+			commands.add(commandClass);
+			return true;
+		}
+
+		private boolean containsCommand(String commandName) {
+			return ids.containsKey(commandName);
+		}
+
+		/**
+		 * Add a mandatory dependency from {@code sourceName} to {@code targetName}. If an optional dependency between
+		 * source and target already exists, the dependency state will be changed from optional to mandatory. Cycles
+		 * are not detected until the graph is built.
+		 *
+		 * @param sourceName
+		 *            source of the newly created edge
+		 * @param targetName
+		 *            target of the newly created edge
+		 * @return {@linkplain DependencyAdded#COMMAND_MISSING} if source or target have not been added, yet.
+		 */
+		public DependencyAdded addMandatoryDependency(String sourceName, String targetName) {
+			if (!containsCommand(Check.notNull(sourceName, "sourceName"))
+					|| !containsCommand(Check.notNull(targetName, "targetName"))) {
+				return DependencyAdded.COMMAND_MISSING;
+			}
+			Integer dependency = dependencies.get(key(sourceName, targetName));
+			if (dependency == null) {
+				mandatory.set(addDependency(sourceName, targetName));
+				return DependencyAdded.SUCCESSFUL;
+			} else if (!mandatory.get(dependency)) {
+				mandatory.set(dependency);
+				return DependencyAdded.OPTIONAL_OVERWRITTEN;
+			} else {
+				return DependencyAdded.ALREADY_PRESENT;
+			}
+		}
+
+		/**
+		 * Add an optional dependency from {@code sourceName} to {@code targetName}. If a mandatory dependency between
+		 * source and target already exists, the dependency state will not be changed but remains mandatory. Cycles are
+		 * not detected until the graph is built.
+		 *
+		 * @param sourceName
+		 *            source of the newly created edge
+		 * @param targetName
+		 *            target of the newly created edge
+		 * @return {@linkplain DependencyAdded#COMMAND_MISSING} if source or target have not been added, yet.
+		 */
+		public DependencyAdded addOptionalDependency(String sourceName, String targetName) {
+			if (!containsCommand(Check.notNull(sourceName, "sourceName"))
+					|| !containsCommand(Check.notNull(targetName, "targetName"))) {
+				return DependencyAdded.COMMAND_MISSING;
+			}
+			Integer dependency = dependencies.get(key(sourceName, targetName));
+			if (dependency == null) {
+				addDependency(sourceName, targetName);
+				return DependencyAdded.SUCCESSFUL;
+			} else if (mandatory.get(dependency)) {
+				return DependencyAdded.MANDATORY_NOT_OVERWRITTEN;
+			} else {
+				return DependencyAdded.ALREADY_PRESENT;
+			}
+		}
+
+		private long key(String sourceName, String targetName) {
+			return (long) ids.get(sourceName) << Integer.SIZE | ids.get(targetName);
+		}
+
+		private int addDependency(String sourceName, String targetName) {
+			if (size == sources.length) {
+				sources = Arrays.copyOf(sources, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			sources[size] = ids.get(sourceName);
+			targets[size] = ids.get(targetName);
+			dependencies.put(key(sourceName, targetName), size);
+			return size++;
+		}
+
+		/**
+		 * Orders all added commands topologically in a single pass and builds the graph.
+		 *
+		 * @return A new and immutable {@linkplain CommandGraph} containing all commands and dependencies that have been
+		 *         added to the builder, or a {@linkplain CyclicDependencyException} as note if they contain cycles.
+		 */
+		public Try<CommandGraph> build() {
+			int[] dependencyOffsets = new int[commands.size() + 1];
+			for (int dependency = 0; dependency < size; dependency++) {
+				dependencyOffsets[sources[dependency] + 1]++;
+			}
+			for (int id = 0; id < commands.size(); id++) {
+				dependencyOffsets[id + 1] += dependencyOffsets[id];
+			}
+			int[] dependencyIds = new int[size];
+			BitSet mandatoryDependencies = new BitSet(size);
+			int[] next = Arrays.copyOf(dependencyOffsets, commands.size());
+			for (int dependency = 0; dependency < size; dependency++) {
+				int row = next[sources[dependency]]++;
+				dependencyIds[row] = targets[dependency];
+				mandatoryDependencies.set(row, mandatory.get(dependency));
+			}
+
+			// Kahn's algorithm: a command is ordered once all of its dependencies are, the ordering doubles as queue
+			Dependents dependents = new Dependents(commands.size(), dependencyOffsets, dependencyIds);
+			int[] unorderedDependencies = new int[commands.size()];
+			int[] ordering = new int[commands.size()];
+			int ordered = 0;
+			for (int id = 0; id < commands.size(); id++) {
+				unorderedDependencies[id] = dependencyOffsets[id + 1] - dependencyOffsets[id];
+				if (unorderedDependencies[id] == 0) {
+					ordering[ordered++] = id;
+				}
+			}
+			for (int position = 0; position < ordered; position++) {
+				int id = ordering[position];
+				for (int dependent = dependents.offsets[id]; dependent < dependents.offsets[id + 1]; dependent++) {
+					if (--unorderedDependencies[dependents.ids[dependent]] == 0) {
+						ordering[ordered++] = dependents.ids[dependent];
+					}
+				}
+			}
+			if (ordered < commands.size()) {
+				return new Try<CommandGraph>(null, new CyclicDependencyException(cycles(unorderedDependencies,
+						dependencyOffsets, dependencyIds)));
+			}
+
+			ImmutableList.Builder<CommandClass> topologicalOrdering = ImmutableList.builder();
+			for (int id : ordering) {
+				topologicalOrdering.add(commands.get(id));
+			}
+			return new Try<CommandGraph>(new CommandGraph(ImmutableList.copyOf(commands), dependencyOffsets,
+					dependencyIds, mandatoryDependencies, topologicalOrdering.build(), null, false, null));
+		}
+
+		/**
+		 * Finds the strongly connected components among the commands which could not be ordered with Tarjan's
+		 * algorithm, without recursion. Components of a single command are cycles only if the command depends on
+		 * itself.
+		 */
+		private List<List<String>> cycles(int[] unorderedDependencies, int[] dependencyOffsets, int[] dependencyIds) {
+			int[] indexes = new int[commands.size()];
+			Arrays.fill(indexes, -1);
+			int[] lowLinks = new int[commands.size()];
+			BitSet onStack = new BitSet(commands.size());
+			int[] stack = new int[commands.size()];
+			int stackSize = 0;
+			int[] calls = new int[commands.size()];
+			int[] nextDependency = new int[commands.size()];
+			int index = 0;
+
+			List<List<String>> result = Lists.newArrayList();
+			for (int start = 0; start < commands.size(); start++) {
+				if (unorderedDependencies[start] == 0 || indexes[start] >= 0) {
+					continue;
+				}
+				int callDepth = 0;
+				calls[callDepth++] = start;
+				indexes[start] = lowLinks[start] = index++;
+				stack[stackSize++] = start;
+				onStack.set(start);
+				nextDependency[start] = dependencyOffsets[start];
+				while (callDepth > 0) {
+					int id = calls[callDepth - 1];
+					if (nextDependency[id] < dependencyOffsets[id + 1]) {
+						int dependency = dependencyIds[nextDependency[id]++];
+						if (unorderedDependencies[dependency] == 0) {
+							continue;
+						} else if (indexes[dependency] < 0) {
+							calls[callDepth++] = dependency;
+							indexes[dependency] = lowLinks[dependency] = index++;
+							stack[stackSize++] = dependency;
+							onStack.set(dependency);
+							nextDependency[dependency] = dependencyOffsets[dependency];
+						} else if (onStack.get(dependency)) {
+							lowLinks[id] = Math.min(lowLinks[id], indexes[dependency]);
+						}
+						continue;
+					}
+
+					callDepth--;
+					if (callDepth > 0) {
+						int caller = calls[callDepth - 1];
+						lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[id]);
+					}
+					if (lowLinks[id] == indexes[id]) {
+						int first = stackSize;
+						do {
+							onStack.clear(stack[--first]);
+						} while (stack[first] != id);
+						if (stackSize - first > 1 || dependsOnItself(id, dependencyOffsets, dependencyIds)) {
+							int[] members = Arrays.copyOfRange(stack, first, stackSize);
+							Arrays.sort(members);
+							List<String> cycle = Lists.newArrayList();
+							for (int member : members) {
+								cycle.add(commands.get(member).getName());
+							}
+							result.add(cycle);
+						}
+						stackSize = first;
+					}
+				}
+			}
+			return result;
+		}
+
+		private static boolean dependsOnItself(int id, int[] dependencyOffsets, int[] dependencyIds) {
+			for (int dependency = dependencyOffsets[id]; dependency < dependencyOffsets[id + 1]; dependency++) {
+				if (dependencyIds[dependency] == id) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
 	private static class DependencyEdge extends DefaultEdge {
 
 		public static final boolean MANDATORY = true;
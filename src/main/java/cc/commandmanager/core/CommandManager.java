@@ -1,31 +1,45 @@
 package cc.commandmanager.core;
 
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import net.sf.qualitycheck.Check;
 import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 
-import org.apache.log4j.Logger;
-
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Manages execution of {@linkplain Command}s which are represented by a {@linkplain CommandGraph}. Execution success is
  * reflected by a {@linkplain ComposedResultState}.
+ * <p>
+ * By default commands are executed one after another in the calling thread. Use {@linkplain #builder(CommandGraph)} to
+ * execute independent commands in parallel. Every execution method has an {@code *Async} variant that returns a
+ * {@linkplain CompletableFuture} instead of blocking the calling thread.
  */
 public class CommandManager {
 
-	private static final Logger logger = Logger.getLogger(CommandManager.class);
-
 	private final Context context;
 	private final CommandGraph commandGraph;
+	private final ExecutionSettings settings;
+	private final AtomicBoolean checkpointedExecutionRunning = new AtomicBoolean();
 
 	/**
 	 * @param commandGraph
@@ -43,6 +57,25 @@ public class CommandManager {
 		Check.stateIsTrue(!commandGraph.isEmpty(), "commandGraph must have at least one command in it");
 		this.commandGraph = commandGraph;
 		context = new Context();
+		settings = ExecutionSettings.SEQUENTIAL;
+	}
+
+	private CommandManager(CommandManagerBuilder builder) {
+		Check.stateIsTrue(!builder.commandGraph.isEmpty(), "commandGraph must have at least one command in it");
+		commandGraph = builder.commandGraph;
+		context = new Context();
+		settings = new ExecutionSettings(builder.executor, builder.parallelism, builder.schedulingPolicy,
+				builder.durationStore, builder.resourceLimits, builder.fingerprintStore, builder.fingerprintCodec,
+				builder.resultCache, builder.checkpointStore, builder.continueOnFailure, builder.retryPolicy);
+	}
+
+	/**
+	 * @param commandGraph
+	 *            specifies which commands can be executed. See {@linkplain #CommandManager(CommandGraph)}.
+	 * @return a builder to configure how a {@linkplain CommandManager} executes its commands
+	 */
+	public static CommandManagerBuilder builder(CommandGraph commandGraph) {
+		return new CommandManagerBuilder(commandGraph);
 	}
 
 	/**
@@ -81,6 +114,113 @@ public class CommandManager {
 		return executeOrderedCommands(commandGraph.topologicalOrderOfAllCommands(), context);
 	}
 
+	/**
+	 * Asynchronous variant of {@linkplain #executeAllCommands()}. A new context will be created which will be passed to
+	 * every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeAllCommandsAsync() {
+		return executeAllCommandsAsync(context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeAllCommands(Context)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeAllCommandsAsync(Context context) {
+		return executeOrderedCommandsAsync(commandGraph.topologicalOrderOfAllCommands(), context);
+	}
+
+	/**
+	 * Execute all commands that are in the {@linkplain CommandGraph} of this {@linkplain CommandManager} once for every
+	 * given context. Every single execution behaves like {@linkplain #executeAllCommands(Context)}, i.e. it will be
+	 * aborted with the first {@linkplain Command} that returns a {@linkplain ResultState.Failure}, without affecting the
+	 * executions for other contexts.
+	 * <p>
+	 * If this {@linkplain CommandManager} was built with an {@linkplain ExecutorService} the executions are pipelined:
+	 * the execution for the next context is started before the previous ones have finished, so that later commands of
+	 * one context run at the same time as earlier commands of the following contexts. At most
+	 * {@code maxContextsInFlight} executions will be running at the same time; the calling thread waits before starting
+	 * another one. Without an {@linkplain ExecutorService} the contexts are processed one after another in the calling
+	 * thread.
+	 * <p>
+	 * If a {@linkplain Command} throws an exception, no further execution will be started and the exception will be
+	 * passed on to the caller as soon as all running executions have finished.
+	 * <p>
+	 * Batches cannot be executed if a {@linkplain CheckpointStore} is configured, since the store keeps the checkpoint
+	 * of a single execution only.
+	 *
+	 * @param contexts
+	 *            every context will be used as the argument for every {@linkplain Command} of its execution.
+	 * @param maxContextsInFlight
+	 *            maximum number of contexts being processed at the same time. Must be positive.
+	 *
+	 * @return a {@linkplain ComposedResultState} for every given context in the order of the contexts.
+	 *
+	 * @throws IllegalStateOfArgumentException
+	 *             if a {@linkplain CheckpointStore} is configured.
+	 */
+	public List<ComposedResultState> executeAllCommands(Iterable<Context> contexts, int maxContextsInFlight) {
+		Check.notNull(contexts, "contexts");
+		Check.stateIsTrue(maxContextsInFlight > 0, "maxContextsInFlight must be positive");
+		Check.stateIsTrue(settings.checkpointStore == null, "Batches cannot be executed with a checkpoint store");
+		List<CommandClass> commands = commandGraph.topologicalOrderOfAllCommands();
+		List<ComposedResultState> results = Lists.newArrayList();
+		if (settings.executor == null) {
+			for (Context context : contexts) {
+				results.add(executeOrderedCommands(commands, context));
+			}
+			return results;
+		}
+
+		final Semaphore contextsInFlight = new Semaphore(maxContextsInFlight);
+		final AtomicBoolean thrown = new AtomicBoolean();
+		List<CompletableFuture<ComposedResultState>> pendingResults = Lists.newArrayList();
+		for (Context context : contexts) {
+			contextsInFlight.acquireUninterruptibly();
+			if (thrown.get()) {
+				contextsInFlight.release();
+				break;
+			}
+			CompletableFuture<ComposedResultState> result = executeOrderedCommandsAsync(commands, context);
+			pendingResults.add(result);
+			result.whenComplete(new BiConsumer<ComposedResultState, Throwable>() {
+
+				@Override
+				public void accept(ComposedResultState resultState, Throwable throwable) {
+					if (throwable != null) {
+						thrown.set(true);
+					}
+					contextsInFlight.release();
+				}
+
+			});
+		}
+		// all permits are available again as soon as every started execution has finished
+		contextsInFlight.acquireUninterruptibly(maxContextsInFlight);
+		for (CompletableFuture<ComposedResultState> result : pendingResults) {
+			results.add(awaitResult(result));
+		}
+		return results;
+	}
+
 	/**
 	 * Find connected components in which the given command names are included. No command will be executed that is not
 	 * at least transitively connected to one of the given commands. Respect the internal order of the found connected
@@ -109,6 +249,10 @@ public class CommandManager {
 	 * at least transitively connected to one of the given commands. Respect the internal order of the found connected
 	 * components. Execution will be aborted with the first {@linkplain Command} that returns a
 	 * {@linkplain ResultState.Failure}.
+	 * <p>
+	 * If an {@linkplain ExecutorService} is configured, the found components share no dependencies and will therefore
+	 * be executed concurrently. A failure then only aborts the execution of the component it occurred in. The result
+	 * states of all components will be merged component by component.
 	 *
 	 * @param commandNames
 	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
@@ -125,24 +269,104 @@ public class CommandManager {
 	 *         {@linkplain Command}s.
 	 */
 	public ComposedResultState executeConnectedComponentsContaining(Iterable<String> commandNames, Context context) {
+		if (settings.executor == null) {
+			return executeOrderedCommands(connectedComponentsOrderOf(commandNames), context);
+		}
+		return awaitResult(executeConnectedComponentsContainingAsync(commandNames, context));
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeConnectedComponentsContaining(Iterable)}. A new context will be
+	 * created which will be passed to every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. If an {@linkplain ExecutorService} is configured,
+	 * each connected component will be executed concurrently like described in
+	 * {@linkplain #executeConnectedComponentsContaining(Iterable, Context)}. Otherwise all commands are executed one
+	 * after another on the {@linkplain ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 *
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeConnectedComponentsContainingAsync(
+			Iterable<String> commandNames) {
+		return executeConnectedComponentsContainingAsync(commandNames, context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeConnectedComponentsContaining(Iterable, Context)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. If an {@linkplain ExecutorService} is configured,
+	 * each connected component will be executed concurrently like described in
+	 * {@linkplain #executeConnectedComponentsContaining(Iterable, Context)}. Otherwise all commands are executed one
+	 * after another on the {@linkplain ForkJoinPool#commonPool() common pool}.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeConnectedComponentsContainingAsync(
+			Iterable<String> commandNames, Context context) {
+		if (settings.executor == null || settings.checkpointStore != null) {
+			return executeOrderedCommandsAsync(connectedComponentsOrderOf(commandNames), context);
+		}
+
+		Check.noNullElements(commandNames);
+		Check.notNull(context, "context");
+		Set<CommandGraph> components = filterConnectedComponentsContaining(commandNames);
+		Check.stateIsTrue(!components.isEmpty(), "commands must contain at least one command");
+
+		final List<CompletableFuture<ComposedResultState>> componentResults = Lists.newArrayList();
+		for (CommandGraph component : components) {
+			componentResults.add(new CommandExecution(component, component.topologicalOrderOfAllCommands(), context,
+					settings).start(settings.executor, settings.parallelism));
+		}
+		return CompletableFuture.allOf(componentResults.toArray(new CompletableFuture<?>[0])).thenApply(
+				new Function<Void, ComposedResultState>() {
+
+					@Override
+					public ComposedResultState apply(Void allCompleted) {
+						List<ComposedResultState> results = Lists.newArrayList();
+						for (CompletableFuture<ComposedResultState> componentResult : componentResults) {
+							results.add(componentResult.join());
+						}
+						return ComposedResultState.concat(results);
+					}
+
+				});
+	}
+
+	private List<CommandClass> connectedComponentsOrderOf(Iterable<String> commandNames) {
 		Check.noNullElements(commandNames);
 
 		List<CommandClass> commands = Lists.newLinkedList();
-		for (CommandGraph graph : filterConnectedComponentsContaining(Sets.newHashSet(commandNames), commandGraph
-				.getConnectedComponents())) {
+		for (CommandGraph graph : filterConnectedComponentsContaining(commandNames)) {
 			commands.addAll(graph.topologicalOrderOfAllCommands());
 		}
-		return executeOrderedCommands(commands, context);
+		return commands;
 	}
 
-	private static Set<CommandGraph> filterConnectedComponentsContaining(Set<String> startCommands,
-			Set<CommandGraph> connectedComponents) {
+	private Set<CommandGraph> filterConnectedComponentsContaining(Iterable<String> startCommands) {
 		ImmutableSet.Builder<CommandGraph> result = ImmutableSet.builder();
-		for (final String command : startCommands) {
-			for (CommandGraph connectedComponent : connectedComponents) {
-				if (connectedComponent.containsCommand(command)) {
-					result.add(connectedComponent);
-				}
+		for (String command : startCommands) {
+			if (commandGraph.containsCommand(command)) {
+				result.add(commandGraph.componentOf(command));
 			}
 		}
 		return result.build();
@@ -243,6 +467,10 @@ public class CommandManager {
 	 *
 	 */
 	public ComposedResultState executeCommandsGracefully(Iterable<String> commandNames, Context context) {
+		return executeOrderedCommands(gracefulOrderOf(commandNames), context);
+	}
+
+	private List<CommandClass> gracefulOrderOf(Iterable<String> commandNames) {
 		Check.noNullElements(commandNames);
 		List<CommandClass> commands = Lists.newLinkedList();
 		for (String commandName : commandNames) {
@@ -251,19 +479,113 @@ public class CommandManager {
 
 		Set<CommandClass> commandsAndTheirDependencies = Sets.newHashSet(commands);
 		for (CommandClass command : commands) {
-			commandsAndTheirDependencies.addAll(successiveBeforeDependencies(command, new HashSet<CommandClass>()));
+			commandsAndTheirDependencies.addAll(commandGraph.getTransitiveDependencies(command.getName()));
 		}
-		return executeOrderedCommands(commandGraph.topologicalOrderOf(commandsAndTheirDependencies), context);
+		return commandGraph.topologicalOrderOf(commandsAndTheirDependencies);
 	}
 
-	private Set<CommandClass> successiveBeforeDependencies(CommandClass command, Set<CommandClass> accumulator) {
-		Set<CommandClass> result = Sets.newHashSet(accumulator);
-		Set<CommandClass> dependencies = commandGraph.getDependencies(command.getName());
-		result.addAll(dependencies);
-		for (CommandClass dependency : dependencies) {
-			result.addAll(successiveBeforeDependencies(dependency, result));
-		}
-		return result;
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommandsGracefully(String...)}. A new context will be created which
+	 * will be passed to every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsGracefullyAsync(String... commandNames) {
+		return executeCommandsGracefullyAsync(context, commandNames);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommandsGracefully(Context, String...)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsGracefullyAsync(Context context,
+			String... commandNames) {
+		return executeCommandsGracefullyAsync(Arrays.asList(commandNames), context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommandsGracefully(Iterable)}. A new context will be created which
+	 * will be passed to every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsGracefullyAsync(Iterable<String> commandNames) {
+		return executeCommandsGracefullyAsync(commandNames, context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommandsGracefully(Iterable, Context)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsGracefullyAsync(Iterable<String> commandNames,
+			Context context) {
+		return executeOrderedCommandsAsync(gracefulOrderOf(commandNames), context);
 	}
 
 	/**
@@ -365,6 +687,109 @@ public class CommandManager {
 		return executeOrderedCommands(commandGraph.topologicalOrderOfNames(commandNames), context);
 	}
 
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommands(String...)}. A new context will be created which will be
+	 * passed to every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsAsync(String... commandNames) {
+		return executeCommandsAsync(context, commandNames);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommands(Context, String...)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsAsync(Context context, String... commandNames) {
+		return executeCommandsAsync(Arrays.asList(commandNames), context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommands(Iterable)}. A new context will be created which will be
+	 * passed to every {@linkplain Command}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsAsync(Iterable<String> commandNames) {
+		return executeCommandsAsync(commandNames, context);
+	}
+
+	/**
+	 * Asynchronous variant of {@linkplain #executeCommands(Iterable, Context)}.
+	 * <p>
+	 * The returned future will be completed when the last {@linkplain Command} finished. It will be completed
+	 * exceptionally if a {@linkplain Command} threw an exception. Commands are executed on the configured
+	 * {@linkplain ExecutorService} or, if none is configured, one after another on the
+	 * {@linkplain ForkJoinPool#commonPool() common pool}. The calling thread will not wait for any command.
+	 *
+	 * @param commandNames
+	 *            names of the {@linkplain Command}s as specified in the {@linkplain CommandClass}es in the underlying
+	 *            graph. Must not be empty. However, command names can be empty.
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @throws CommandNotFoundException
+	 *             if no command can be found for a given command name in the underlying graph.
+	 * @throws IllegalStateOfArgumentException
+	 *             if no command is specified.
+	 *
+	 * @return future {@linkplain ComposedResultState} that reflects the overall success of the executed
+	 *         {@linkplain Command}s.
+	 */
+	public CompletableFuture<ComposedResultState> executeCommandsAsync(Iterable<String> commandNames, Context context) {
+		Check.noNullElements(commandNames, "commandNames");
+		return executeOrderedCommandsAsync(commandGraph.topologicalOrderOfNames(commandNames), context);
+	}
+
 	/**
 	 * Execute all commands that are in the given {@linkplain CommandGraph}. Respect the internal order of the graph.
 	 * Execution will be aborted with the first {@linkplain Command} that returns a {@linkplain ResultState.Failure}. A
@@ -403,46 +828,419 @@ public class CommandManager {
 	public static ComposedResultState executeCommands(CommandGraph graph, Context context) {
 		Check.notNull(graph, "graph");
 		Check.stateIsTrue(!graph.isEmpty(), "graph must have at least one command in it");
-		return executeOrderedCommands(graph.topologicalOrderOfAllCommands(), context);
+		return executeOrderedCommands(graph, graph.topologicalOrderOfAllCommands(), context);
+	}
+
+	/**
+	 * Continue the last execution that did not complete without {@linkplain ResultState.Failure}, using the
+	 * {@linkplain Checkpoint} saved in the configured {@linkplain CheckpointStore}. The bindings of the checkpoint will
+	 * be bound to a new context. See {@linkplain #resume(Context)} for details.
+	 *
+	 * @return {@linkplain ComposedResultState} that reflects the overall success of the previously completed and the
+	 *         just executed {@linkplain Command}s.
+	 *
+	 * @throws IllegalStateOfArgumentException
+	 *             if no {@linkplain CheckpointStore} is configured or no checkpoint has been saved.
+	 */
+	public ComposedResultState resume() {
+		return resume(new Context());
 	}
 
 	/**
-	 * Executes the given ordered commands using the specified context.
+	 * Continue the last execution that did not complete without {@linkplain ResultState.Failure}, using the
+	 * {@linkplain Checkpoint} saved in the configured {@linkplain CheckpointStore}. All commands of the checkpointed
+	 * execution that did not complete will be executed, starting with the ones whose dependencies all completed.
+	 * Completed commands will not be executed again.
+	 * <p>
+	 * The bindings of the checkpoint, i.e. the serializable values bound before the checkpointed execution started and
+	 * the ones bound by completed commands, will be bound to the given context, replacing values bound to the same
+	 * keys. The commands must still be part of the {@linkplain CommandGraph} of this {@linkplain CommandManager}.
+	 *
+	 * @param context
+	 *            will be used as the argument for every executed {@linkplain Command}.
+	 *
+	 * @return {@linkplain ComposedResultState} that reflects the overall success of the previously completed and the
+	 *         just executed {@linkplain Command}s. Previously completed commands are reported first, warnings without
+	 *         their cause.
+	 *
+	 * @throws IllegalStateOfArgumentException
+	 *             if no {@linkplain CheckpointStore} is configured or no checkpoint has been saved.
+	 * @throws CommandNotFoundException
+	 *             if a command of the checkpoint is not part of the underlying graph.
+	 */
+	public ComposedResultState resume(Context context) {
+		Check.notNull(context, "context");
+		Check.stateIsTrue(settings.checkpointStore != null, "Resuming requires a checkpoint store");
+		startCheckpointedExecution();
+		try {
+			return resumeCheckpoint(context);
+		} finally {
+			checkpointedExecutionRunning.set(false);
+		}
+	}
+
+	private ComposedResultState resumeCheckpoint(Context context) {
+		Try<Checkpoint> loaded = settings.checkpointStore.load();
+		Check.stateIsTrue(loaded.isPresent(), "No checkpoint to resume from: " + loaded.getNote());
+		Checkpoint checkpoint = loaded.get();
+
+		List<ResultState> completedResultStates = Lists.newArrayList();
+		List<CommandClass> completedCommands = Lists.newArrayList();
+		for (String command : checkpoint.getCompletedCommands()) {
+			completedResultStates.add(checkpoint.getResultState(command));
+			completedCommands.add(commandGraph.getCommandClass(command));
+		}
+		List<CommandClass> remainingCommands = Lists.newArrayList();
+		for (String command : checkpoint.getCommands()) {
+			if (!checkpoint.getCompletedCommands().contains(command)) {
+				remainingCommands.add(commandGraph.getCommandClass(command));
+			}
+		}
+		RecordingContext.restore(context, checkpoint.getBindings());
+
+		if (remainingCommands.isEmpty()) {
+			settings.checkpointStore.clear();
+			return new ComposedResultState(completedResultStates, completedCommands);
+		}
+		ComposedResultState resultState = execute(new CommandExecution(commandGraph, remainingCommands, context,
+				settings, checkpoint));
+		if (completedCommands.isEmpty()) {
+			return resultState;
+		}
+		return ComposedResultState.concat(ImmutableList.of(new ComposedResultState(completedResultStates,
+				completedCommands), resultState));
+	}
+
+	/**
+	 * Executes the given ordered commands using the specified context. Commands are executed in the calling thread
+	 * unless this {@linkplain CommandManager} was built with an {@linkplain ExecutorService}.
 	 *
 	 * @param commands
 	 * @param context
 	 * @return whether the execution was successful
 	 */
-	private static ComposedResultState executeOrderedCommands(Iterable<CommandClass> commands, Context context) {
+	private ComposedResultState executeOrderedCommands(List<CommandClass> commands, Context context) {
+		checkExecutable(commands, context);
+		if (settings.checkpointStore == null) {
+			return execute(new CommandExecution(commandGraph, commands, context, settings));
+		}
+		startCheckpointedExecution();
+		try {
+			return execute(new CommandExecution(commandGraph, commands, context, settings));
+		} finally {
+			checkpointedExecutionRunning.set(false);
+		}
+	}
+
+	private ComposedResultState execute(CommandExecution execution) {
+		if (settings.executor == null) {
+			return execution.run();
+		}
+		return awaitResult(execution.start(settings.executor, settings.parallelism));
+	}
+
+	private CompletableFuture<ComposedResultState> executeOrderedCommandsAsync(List<CommandClass> commands,
+			Context context) {
+		checkExecutable(commands, context);
+		if (settings.checkpointStore == null) {
+			return startExecution(new CommandExecution(commandGraph, commands, context, settings));
+		}
+		startCheckpointedExecution();
+		CompletableFuture<ComposedResultState> result;
+		try {
+			result = startExecution(new CommandExecution(commandGraph, commands, context, settings));
+		} catch (RuntimeException e) {
+			checkpointedExecutionRunning.set(false);
+			throw e;
+		}
+		return result.whenComplete(new BiConsumer<ComposedResultState, Throwable>() {
+
+			@Override
+			public void accept(ComposedResultState resultState, Throwable throwable) {
+				checkpointedExecutionRunning.set(false);
+			}
+
+		});
+	}
+
+	private CompletableFuture<ComposedResultState> startExecution(CommandExecution execution) {
+		if (settings.executor == null) {
+			return execution.start(ForkJoinPool.commonPool(), 1);
+		}
+		return execution.start(settings.executor, settings.parallelism);
+	}
+
+	/**
+	 * The {@linkplain CheckpointStore} keeps the checkpoint of a single execution only. Overlapping executions would
+	 * replace each other's checkpoint and a successful one would remove the checkpoint of a failed one.
+	 */
+	private void startCheckpointedExecution() {
+		Check.stateIsTrue(checkpointedExecutionRunning.compareAndSet(false, true),
+				"Executions using a checkpoint store must not overlap");
+	}
+
+	private static ComposedResultState executeOrderedCommands(CommandGraph graph, List<CommandClass> commands,
+			Context context) {
+		checkExecutable(commands, context);
+		return new CommandExecution(graph, commands, context, ExecutionSettings.SEQUENTIAL).run();
+	}
+
+	private static void checkExecutable(List<CommandClass> commands, Context context) {
 		Check.noNullElements(commands, "commands");
-		Check.stateIsTrue(!Iterables.isEmpty(commands), "commands must contain at least one command");
+		Check.stateIsTrue(!commands.isEmpty(), "commands must contain at least one command");
 		Check.notNull(context, "context");
+	}
 
-		ImmutableList.Builder<ResultState> resultStates = ImmutableList.builder();
-		ImmutableList.Builder<CommandClass> executedCommands = ImmutableList.builder();
-		for (CommandClass command : commands) {
-			Command commandInstance = command.newInstance();
-			logger.info("Execute current command: " + commandInstance.getClass());
-			long startTime = System.currentTimeMillis();
-			ResultState resultState = commandInstance.execute(context);
-			resultStates.add(resultState);
-			executedCommands.add(command);
-			if (resultState.isSuccess()) {
-				logger.info("Command " + commandInstance.getClass() + " successfully executed in "
-						+ (System.currentTimeMillis() - startTime) + " ms");
-			} else if (resultState.isWarning()) {
-				logger.warn("Command " + commandInstance.getClass() + " executed with warning in "
-						+ (System.currentTimeMillis() - startTime) + " ms: " + resultState.getMessage() + " "
-						+ resultState.getCause());
-			} else {
-				logger.error("Command " + commandInstance.getClass() + " failed to execute (took "
-						+ (System.currentTimeMillis() - startTime) + " ms): " + resultState.getMessage() + " "
-						+ resultState.getCause());
-				logger.error("Aborting execution of all commands.");
-				break;
-			}
+	private static ComposedResultState awaitResult(Future<ComposedResultState> result) {
+		try {
+			return Uninterruptibles.getUninterruptibly(result);
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new UncheckedExecutionException(e.getCause());
+		}
+	}
+
+	/**
+	 * A builder for a {@linkplain CommandManager}. Without further configuration the built {@linkplain CommandManager}
+	 * executes one command after another in the calling thread, just like one created by
+	 * {@linkplain CommandManager#CommandManager(CommandGraph)}.
+	 */
+	public static class CommandManagerBuilder {
+
+		private final CommandGraph commandGraph;
+		private ExecutorService executor;
+		private int parallelism = Integer.MAX_VALUE;
+		private SchedulingPolicy schedulingPolicy;
+		private DurationStore durationStore;
+		private final Map<String, Integer> resourceLimits = Maps.newHashMap();
+		private FingerprintStore fingerprintStore;
+		private ValueCodec fingerprintCodec;
+		private ResultCache resultCache;
+		private CheckpointStore checkpointStore;
+		private boolean continueOnFailure;
+		private RetryPolicy retryPolicy = RetryPolicy.NONE;
+
+		private CommandManagerBuilder(CommandGraph commandGraph) {
+			this.commandGraph = Check.notNull(commandGraph, "commandGraph");
+		}
+
+		/**
+		 * Execute commands in parallel on the given {@linkplain ExecutorService}. Every command will be started as soon
+		 * as all of its mandatory and optional dependencies have finished. Execution will still be aborted with the
+		 * first {@linkplain Command} that returns a {@linkplain ResultState.Failure}, i.e. no further command will be
+		 * started while commands that are already running will be finished.
+		 * <p>
+		 * Mind that independent commands will then access the shared {@linkplain Context} concurrently. The executor
+		 * will not be shut down by the {@linkplain CommandManager}.
+		 *
+		 * @param executor
+		 *            to run the commands on
+		 * @return this builder
+		 */
+		public CommandManagerBuilder executor(ExecutorService executor) {
+			this.executor = Check.notNull(executor, "executor");
+			return this;
+		}
+
+		/**
+		 * Execute every ready command on its own virtual thread. This is meant for commands that mostly block on I/O,
+		 * since no platform thread is occupied while such a command waits. Commands are started with respect to their
+		 * dependencies just like with {@linkplain #executor(ExecutorService)}.
+		 * <p>
+		 * Virtual threads require Java 21 or later. On older runtimes a new platform thread will be started for every
+		 * ready command unless an idle one can be reused.
+		 *
+		 * @return this builder
+		 */
+		public CommandManagerBuilder virtualThreads() {
+			this.executor = VirtualThreads.newThreadPerTaskExecutor();
+			return this;
+		}
+
+		/**
+		 * Limit the number of commands that run at the same time on the configured {@linkplain ExecutorService}. By
+		 * default this number is only limited by the executor itself.
+		 *
+		 * @param parallelism
+		 *            must be positive
+		 * @return this builder
+		 */
+		public CommandManagerBuilder parallelism(int parallelism) {
+			Check.stateIsTrue(parallelism > 0, "parallelism must be positive");
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Decide which commands to start first whenever more commands are ready to be executed than allowed by
+		 * {@linkplain #parallelism(int)}. By default ready commands are started in the internal order of the graph.
+		 *
+		 * @param schedulingPolicy
+		 *            e.g. {@linkplain CriticalPathFirst}
+		 * @return this builder
+		 */
+		public CommandManagerBuilder schedulingPolicy(SchedulingPolicy schedulingPolicy) {
+			this.schedulingPolicy = Check.notNull(schedulingPolicy, "schedulingPolicy");
+			return this;
+		}
+
+		/**
+		 * Record the duration of every executed command in the given {@linkplain DurationStore}.
+		 *
+		 * @param durationStore
+		 *            to record the durations in
+		 * @return this builder
+		 */
+		public CommandManagerBuilder recordDurations(DurationStore durationStore) {
+			this.durationStore = Check.notNull(durationStore, "durationStore");
+			return this;
 		}
-		return new ComposedResultState(resultStates.build(), executedCommands.build());
+
+		/**
+		 * Start the commands on the longest remaining path first, using and updating the durations in the given
+		 * {@linkplain DurationStore}. This is short for calling {@linkplain #schedulingPolicy(SchedulingPolicy)} with
+		 * a {@linkplain CriticalPathFirst} policy and {@linkplain #recordDurations(DurationStore)}.
+		 *
+		 * @param durationStore
+		 *            to estimate durations from and to record the durations in
+		 * @return this builder
+		 */
+		public CommandManagerBuilder criticalPathFirst(DurationStore durationStore) {
+			return schedulingPolicy(new CriticalPathFirst(durationStore)).recordDurations(durationStore);
+		}
+
+		/**
+		 * Limit how many commands of the given resource class run at the same time. The sum of the weights of all
+		 * running commands of that class will not exceed the given capacity. A command whose weight exceeds the
+		 * capacity will be executed as the only command of its resource class. Commands of resource classes without
+		 * limit are only limited by {@linkplain #parallelism(int)}.
+		 *
+		 * @param resourceClass
+		 *            as declared in the catalog or by {@linkplain ResourceUsage}, e.g. {@code "DISK"}
+		 * @param capacity
+		 *            must be positive
+		 * @return this builder
+		 * @see CommandClass#getResourceClass()
+		 */
+		public CommandManagerBuilder resourceLimit(String resourceClass, int capacity) {
+			Check.notNull(resourceClass, "resourceClass");
+			Check.stateIsTrue(capacity > 0, "capacity must be positive");
+			resourceLimits.put(resourceClass, capacity);
+			return this;
+		}
+
+		/**
+		 * Skip commands that are up to date, just like a build tool skips targets whose sources did not change. Every
+		 * executed command gets a fingerprint of the values it read from the {@linkplain Context} and of the
+		 * fingerprints of its dependencies. Before a command is executed again, the values bound to the keys it read
+		 * last time are fingerprinted once more. If the fingerprint is unchanged, the command will not be executed.
+		 * Instead the values it bound last time are bound to the context again and its last {@linkplain ResultState}
+		 * is reported. Commands that returned a {@linkplain ResultState.Failure} are always executed again.
+		 * <p>
+		 * Fingerprints are computed from the serialized context keys and values, see
+		 * {@linkplain #incremental(FingerprintStore, ValueCodec)}. Commands must not depend on anything but the context,
+		 * e.g. a file, or they must read a context value that changes along with it. Unbinding values is not restored
+		 * when a command is skipped.
+		 *
+		 * @param fingerprintStore
+		 *            to look up and record the fingerprints of the commands in
+		 * @return this builder
+		 */
+		public CommandManagerBuilder incremental(FingerprintStore fingerprintStore) {
+			return incremental(fingerprintStore, new SerializingValueCodec());
+		}
+
+		/**
+		 * Like {@linkplain #incremental(FingerprintStore)}, but fingerprints are computed from the context keys and
+		 * values as encoded by the given codec, so equal values must be encoded to equal bytes. A command that read a
+		 * key or value which cannot be encoded is never considered up to date, and neither are its dependents.
+		 *
+		 * @param fingerprintStore
+		 *            to look up and record the fingerprints of the commands in
+		 * @param codec
+		 *            to encode the context keys and values with
+		 * @return this builder
+		 */
+		public CommandManagerBuilder incremental(FingerprintStore fingerprintStore, ValueCodec codec) {
+			this.fingerprintStore = Check.notNull(fingerprintStore, "fingerprintStore");
+			fingerprintCodec = Check.notNull(codec, "codec");
+			return this;
+		}
+
+		/**
+		 * Do not execute {@linkplain Cacheable} commands whose result has been cached for the same input values.
+		 * Instead the cached values will be bound to the {@linkplain Context} and a {@linkplain ResultState.Success}
+		 * will be reported. Results of successful executions of {@linkplain Cacheable} commands will be cached.
+		 *
+		 * @param resultCache
+		 *            to look up and store the results of {@linkplain Cacheable} commands in, e.g. a
+		 *            {@linkplain DiskResultCache}
+		 * @return this builder
+		 */
+		public CommandManagerBuilder resultCache(ResultCache resultCache) {
+			this.resultCache = Check.notNull(resultCache, "resultCache");
+			return this;
+		}
+
+		/**
+		 * Save a {@linkplain Checkpoint} after every command that did not return a {@linkplain ResultState.Failure},
+		 * so that a failed execution can be continued using {@linkplain CommandManager#resume(Context)}. The
+		 * checkpoint will be removed once an execution completed without failure. Connected components will be
+		 * executed as a single execution, so that they share one checkpoint.
+		 * <p>
+		 * A store keeps the checkpoint of a single execution only, so executions using the same store must not overlap.
+		 * The built {@linkplain CommandManager} rejects batches of contexts as well as executions starting while
+		 * another one is still running.
+		 *
+		 * @param checkpointStore
+		 *            to save the checkpoints in, e.g. a {@linkplain FileCheckpointStore}
+		 * @return this builder
+		 */
+		public CommandManagerBuilder checkpoints(CheckpointStore checkpointStore) {
+			this.checkpointStore = Check.notNull(checkpointStore, "checkpointStore");
+			return this;
+		}
+
+		/**
+		 * Do not abort the execution with the first {@linkplain ResultState.Failure}. Instead only the commands that
+		 * depend on a failed command, directly or transitively, will not be executed. All other commands will still be
+		 * executed. The commands that were not executed will be reported by
+		 * {@linkplain ComposedResultState#getSkippedCommands()}. Optional dependencies are treated like mandatory
+		 * ones. An exception thrown by a {@linkplain Command} will still abort the execution.
+		 *
+		 * @return this builder
+		 */
+		public CommandManagerBuilder continueOnFailure() {
+			continueOnFailure = true;
+			return this;
+		}
+
+		/**
+		 * Execute commands that returned a {@linkplain ResultState.Failure} again according to the given policy,
+		 * unless their command class declares its own policy using {@linkplain Retry}. Every failed attempt will be
+		 * reported by {@linkplain ComposedResultState#getFailedAttempts()}. When executing in parallel, no thread
+		 * waits while a command backs off. The command does not count towards {@linkplain #parallelism(int)} and its
+		 * resource limit in the meantime, so that other ready commands can run. It will not be executed again if the
+		 * execution has been aborted while it was backing off.
+		 *
+		 * @param retryPolicy
+		 *            for commands without {@linkplain Retry} annotation
+		 * @return this builder
+		 */
+		public CommandManagerBuilder retryPolicy(RetryPolicy retryPolicy) {
+			this.retryPolicy = Check.notNull(retryPolicy, "retryPolicy");
+			return this;
+		}
+
+		/**
+		 * @return A new {@linkplain CommandManager} for the configured {@linkplain CommandGraph}.
+		 * @throws IllegalStateOfArgumentException
+		 *             when the graph is empty.
+		 */
+		public CommandManager build() {
+			return new CommandManager(this);
+		}
+
 	}
 
 }
@@ -9,7 +9,9 @@ import net.sf.qualitycheck.Check;
 import net.sf.qualitycheck.exception.IllegalEmptyArgumentException;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 
 /**
  * Represents a composite result state that is composed of {@linkplain ResultState}s from {@linkplain Command}
@@ -24,6 +26,8 @@ public final class ComposedResultState extends ResultState {
 	private final ResultState overallState;
 	private final ImmutableList<CommandClass> executedCommands;
 	private final ImmutableList<ResultState> resultStates;
+	private final ImmutableList<CommandClass> skippedCommands;
+	private final ImmutableListMultimap<CommandClass, ResultState> failedAttempts;
 
 	/**
 	 * Create a new {@linkplain ComposedResultState} from the given result states and command classes. The elements from
@@ -34,6 +38,40 @@ public final class ComposedResultState extends ResultState {
 	 * @param executedCommands
 	 */
 	public ComposedResultState(Iterable<ResultState> resultStates, Iterable<CommandClass> executedCommands) {
+		this(resultStates, executedCommands, ImmutableList.<CommandClass> of());
+	}
+
+	/**
+	 * Create a new {@linkplain ComposedResultState} from the given result states and command classes. The elements from
+	 * both iterables correspond to each other so that the result state at index <i>i</i> was returned by the command at
+	 * index <i>i</i>. Additionally, the commands that were skipped because a command they depend on failed are given.
+	 * 
+	 * @param resultStates
+	 * @param executedCommands
+	 * @param skippedCommands
+	 *            commands that were not executed because of a failed dependency. May be empty.
+	 */
+	public ComposedResultState(Iterable<ResultState> resultStates, Iterable<CommandClass> executedCommands,
+			Iterable<CommandClass> skippedCommands) {
+		this(resultStates, executedCommands, skippedCommands, ImmutableListMultimap.<CommandClass, ResultState> of());
+	}
+
+	/**
+	 * Create a new {@linkplain ComposedResultState} from the given result states and command classes. The elements from
+	 * both iterables correspond to each other so that the result state at index <i>i</i> was returned by the last
+	 * attempt of the command at index <i>i</i>. Additionally, the skipped commands and the failed attempts of commands
+	 * that were retried are given. Failed attempts do not influence the overall result state.
+	 * 
+	 * @param resultStates
+	 * @param executedCommands
+	 * @param skippedCommands
+	 *            commands that were not executed because of a failed dependency. May be empty.
+	 * @param failedAttempts
+	 *            result states of all but the last attempt of retried commands in the order of the attempts. May be
+	 *            empty.
+	 */
+	public ComposedResultState(Iterable<ResultState> resultStates, Iterable<CommandClass> executedCommands,
+			Iterable<CommandClass> skippedCommands, ListMultimap<CommandClass, ResultState> failedAttempts) {
 		if (!resultStates.iterator().hasNext()) {
 			// TODO wait for https://github.com/before/quality-check/pull/19#event-142137188 to be in release
 			throw new IllegalEmptyArgumentException("resultStates");
@@ -47,6 +85,8 @@ public final class ComposedResultState extends ResultState {
 
 		this.executedCommands = ImmutableList.copyOf(executedCommands);
 		this.resultStates = ImmutableList.copyOf(resultStates);
+		this.skippedCommands = ImmutableList.copyOf(Check.noNullElements(skippedCommands, "skippedCommands"));
+		this.failedAttempts = ImmutableListMultimap.copyOf(Check.notNull(failedAttempts, "failedAttempts"));
 
 		ResultState overallState = null;
 		for (ResultState resultState : resultStates) {
@@ -55,6 +95,30 @@ public final class ComposedResultState extends ResultState {
 		this.overallState = overallState;
 	}
 
+	/**
+	 * Concatenate the given {@linkplain ComposedResultState}s into a single one. Result states, executed commands,
+	 * skipped commands and failed attempts will keep the order of the given states.
+	 *
+	 * @param composedResultStates
+	 *            to be concatenated. Must not be empty.
+	 * @return {@linkplain ComposedResultState} containing the result states and executed commands of all given states
+	 */
+	public static ComposedResultState concat(Iterable<ComposedResultState> composedResultStates) {
+		Check.noNullElements(composedResultStates, "composedResultStates");
+		ImmutableList.Builder<ResultState> resultStates = ImmutableList.builder();
+		ImmutableList.Builder<CommandClass> executedCommands = ImmutableList.builder();
+		ImmutableList.Builder<CommandClass> skippedCommands = ImmutableList.builder();
+		ImmutableListMultimap.Builder<CommandClass, ResultState> failedAttempts = ImmutableListMultimap.builder();
+		for (ComposedResultState composedResultState : composedResultStates) {
+			resultStates.addAll(composedResultState.resultStates);
+			executedCommands.addAll(composedResultState.executedCommands);
+			skippedCommands.addAll(composedResultState.skippedCommands);
+			failedAttempts.putAll(composedResultState.failedAttempts);
+		}
+		return new ComposedResultState(resultStates.build(), executedCommands.build(), skippedCommands.build(),
+				failedAttempts.build());
+	}
+
 	private static ResultState updateOverallState(ResultState resultState, @Nullable ResultState overallState) {
 		if (overallState == null) {
 			return resultState;
@@ -88,6 +152,27 @@ public final class ComposedResultState extends ResultState {
 		return executedCommands;
 	}
 
+	/**
+	 * 
+	 * @return all {@link Command}s that were not executed because a command they depend on, directly or transitively,
+	 *         failed while other commands continued to be executed. Result will be immutable.
+	 * @see CommandManager.CommandManagerBuilder#continueOnFailure()
+	 */
+	public List<CommandClass> getSkippedCommands() {
+		return skippedCommands;
+	}
+
+	/**
+	 * 
+	 * @return the result states of all attempts of retried {@link Command}s except for their last attempt, which is
+	 *         part of {@linkplain #getResultStates()}. Attempts of each command are in the order they were made.
+	 *         Result will be immutable.
+	 * @see RetryPolicy
+	 */
+	public ListMultimap<CommandClass, ResultState> getFailedAttempts() {
+		return failedAttempts;
+	}
+
 	@Override
 	public boolean isSuccess() {
 		return overallState.isSuccess();
@@ -120,9 +205,15 @@ public final class ComposedResultState extends ResultState {
 		Iterator<ResultState> result = resultStates.iterator();
 		for (CommandClass command : executedCommands) {
 			message += command + ": " + result.next();
-			message += result.hasNext() ? ", " : "]";
+			message += result.hasNext() ? ", " : "";
+		}
+		if (!skippedCommands.isEmpty()) {
+			message += "; Skipped commands: " + skippedCommands;
+		}
+		if (!failedAttempts.isEmpty()) {
+			message += "; Failed attempts: " + failedAttempts;
 		}
-		return message;
+		return message + "]";
 	}
 
 	@Override
@@ -131,6 +222,8 @@ public final class ComposedResultState extends ResultState {
 		int result = 1;
 		result = prime * result + ((executedCommands == null) ? 0 : executedCommands.hashCode());
 		result = prime * result + ((resultStates == null) ? 0 : resultStates.hashCode());
+		result = prime * result + skippedCommands.hashCode();
+		result = prime * result + failedAttempts.hashCode();
 		return result;
 	}
 
@@ -157,7 +250,7 @@ public final class ComposedResultState extends ResultState {
 		} else if (!resultStates.equals(other.resultStates)) {
 			return false;
 		}
-		return true;
+		return skippedCommands.equals(other.skippedCommands) && failedAttempts.equals(other.failedAttempts);
 	}
 
 }
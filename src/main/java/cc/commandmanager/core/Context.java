@@ -12,6 +12,8 @@ import com.google.common.collect.Maps;
  * Execution context of the {@linkplain CommandManager}. {@linkplain Command}s can use this context to store or read
  * values during their execution. The context will be passed along the execution graph. Values bound to keys of the
  * context must be unique, i.e. a {@linkplain Command} cannot accidently overwrite an existing key value binding.
+ * <p>
+ * A context is thread-safe, so that {@linkplain Command}s executed in parallel can share it.
  */
 public class Context {
 
@@ -32,7 +34,8 @@ public class Context {
 	 */
 	public Context(Context context) {
 		this();
-		items.putAll(Check.notNull(context).items);
+		Check.notNull(context);
+		items.putAll(context.copyOfItems());
 	}
 
 	/**
@@ -43,7 +46,7 @@ public class Context {
 	 * @throws KeyAlreadyBoundException
 	 *             if there is already a value bound to the key
 	 */
-	public void bind(Object key, @Nullable Object value) {
+	public synchronized void bind(Object key, @Nullable Object value) {
 		Check.notNull(key);
 		if (items.containsKey(key)) {
 			throw new KeyAlreadyBoundException(key);
@@ -58,7 +61,7 @@ public class Context {
 	 * @throws KeyNotBoundException
 	 *             if there is no value bound to that key
 	 */
-	public void unbind(Object key) {
+	public synchronized void unbind(Object key) {
 		Check.notNull(key);
 		checkMapContainsKey(items, key);
 		items.remove(key);
@@ -73,7 +76,7 @@ public class Context {
 	 * @throws KeyNotBoundException
 	 *             if there is no value bound to the key
 	 */
-	public void rebind(Object key, @Nullable Object value) {
+	public synchronized void rebind(Object key, @Nullable Object value) {
 		unbind(key);
 		bind(key, value);
 	}
@@ -85,7 +88,7 @@ public class Context {
 	 * @throws KeyAlreadyBoundException
 	 *             if at least one of the given keys has already bound values
 	 */
-	public void bindAll(Map<? extends Object, ? extends Object> map) {
+	public synchronized void bindAll(Map<? extends Object, ? extends Object> map) {
 		Check.notNull(map);
 		for (Object key : map.keySet()) {
 			bind(key, map.get(key));
@@ -98,7 +101,7 @@ public class Context {
 	 * @param key
 	 * @return if a value is bound to the key
 	 */
-	public boolean containsKey(Object key) {
+	public synchronized boolean containsKey(Object key) {
 		return items.containsKey(Check.notNull(key));
 	}
 
@@ -108,7 +111,7 @@ public class Context {
 	 * @param key
 	 * @return value bound to that key
 	 */
-	public Object get(Object key) {
+	public synchronized Object get(Object key) {
 		Check.notNull(key);
 		checkMapContainsKey(items, key);
 		return items.get(key);
@@ -201,14 +204,24 @@ public class Context {
 
 	@Override
 	public boolean equals(Object context) {
-		return context instanceof Context && items.equals(((Context) context).items);
+		if (this == context) {
+			return true;
+		}
+		return context instanceof Context && copyOfItems().equals(((Context) context).copyOfItems());
 	}
 
 	@Override
-	public int hashCode() {
+	public synchronized int hashCode() {
 		return items.hashCode();
 	}
 
+	/**
+	 * @return a snapshot of all key value bindings of this context
+	 */
+	synchronized Map<Object, Object> copyOfItems() {
+		return Maps.newHashMap(items);
+	}
+
 	private static void checkMapContainsKey(Map<Object, Object> map, Object key) {
 		if (!map.containsKey(key)) {
 			throw new KeyNotBoundException(key);
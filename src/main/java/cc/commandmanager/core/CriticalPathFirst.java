@@ -0,0 +1,82 @@
+package cc.commandmanager.core;
+
+import java.util.List;
+import java.util.Map;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@linkplain SchedulingPolicy} that starts the commands on the longest remaining path first. The priority of a
+ * command is its bottom-level, i.e. the sum of estimated durations along the longest path from the command to any
+ * command depending on it. Durations are estimated by a {@linkplain DurationStore}. Commands without recorded duration
+ * are estimated by the average of all recorded durations.
+ * <p>
+ * To keep the estimations up to date, the same {@linkplain DurationStore} should be used to record the durations of
+ * every execution, see {@linkplain CommandManager.CommandManagerBuilder#recordDurations(DurationStore)}.
+ */
+public class CriticalPathFirst implements SchedulingPolicy {
+
+	private static final long UNKNOWN_DURATION = 1;
+
+	private final DurationStore durations;
+
+	/**
+	 * @param durations
+	 *            used to estimate how long each command will take
+	 */
+	public CriticalPathFirst(DurationStore durations) {
+		this.durations = Check.notNull(durations, "durations");
+	}
+
+	@Override
+	public long[] prioritize(CommandGraph graph, List<CommandClass> commands) {
+		Check.notNull(graph, "graph");
+		Check.noNullElements(commands, "commands");
+
+		long[] bottomLevels = estimateDurations(commands);
+		Map<String, Integer> indices = Maps.newHashMapWithExpectedSize(commands.size());
+		for (int index = 0; index < commands.size(); index++) {
+			indices.put(commands.get(index).getName(), index);
+		}
+
+		// dependents come after their dependencies, so the bottom-level of a command is final when it is visited
+		long[] longestDependentPath = new long[commands.size()];
+		for (int index = commands.size() - 1; index >= 0; index--) {
+			bottomLevels[index] += longestDependentPath[index];
+			for (CommandClass dependency : graph.getDependencies(commands.get(index).getName())) {
+				Integer dependencyIndex = indices.get(dependency.getName());
+				if (dependencyIndex != null) {
+					longestDependentPath[dependencyIndex] = Math.max(longestDependentPath[dependencyIndex],
+							bottomLevels[index]);
+				}
+			}
+		}
+		return bottomLevels;
+	}
+
+	private long[] estimateDurations(List<CommandClass> commands) {
+		long[] estimations = new long[commands.size()];
+		boolean[] known = new boolean[commands.size()];
+		long sum = 0;
+		int count = 0;
+		for (int index = 0; index < commands.size(); index++) {
+			Try<Long> duration = durations.getDuration(commands.get(index));
+			if (duration.isPresent()) {
+				estimations[index] = duration.get();
+				known[index] = true;
+				sum += duration.get();
+				count++;
+			}
+		}
+		long average = count == 0 ? UNKNOWN_DURATION : Math.max(UNKNOWN_DURATION, sum / count);
+		for (int index = 0; index < commands.size(); index++) {
+			if (!known[index]) {
+				estimations[index] = average;
+			}
+		}
+		return estimations;
+	}
+
+}
@@ -0,0 +1,43 @@
+package cc.commandmanager.core;
+
+import java.util.List;
+
+import net.sf.qualitycheck.Check;
+import cc.commandmanager.core.CommandGraph.BulkCommandGraphBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * {@linkplain RuntimeException} indicating that the dependencies added to a {@linkplain BulkCommandGraphBuilder}
+ * contain cycles. It reports every strongly connected component that contains a cycle.
+ */
+public class CyclicDependencyException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ImmutableList<List<String>> cycles;
+
+	/**
+	 * Creates a new {@linkplain CyclicDependencyException} with a custom message containing the given cycles.
+	 *
+	 * @param cycles
+	 *            names of the members of each strongly connected component that contains a cycle
+	 */
+	public CyclicDependencyException(List<? extends List<String>> cycles) {
+		super("Commands depend on each other in cycles: " + Check.noNullElements(cycles, "cycles"));
+		ImmutableList.Builder<List<String>> copy = ImmutableList.builder();
+		for (List<String> cycle : cycles) {
+			copy.add(ImmutableList.copyOf(cycle));
+		}
+		this.cycles = copy.build();
+	}
+
+	/**
+	 * @return Names of the members of each strongly connected component that contains a cycle. Members of a component
+	 *         are ordered the way they have been added to the builder.
+	 */
+	public List<List<String>> getCycles() {
+		return cycles;
+	}
+
+}
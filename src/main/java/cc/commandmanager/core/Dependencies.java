@@ -0,0 +1,43 @@
+package cc.commandmanager.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the dependencies of a {@linkplain Command} implementation, so that a {@linkplain CommandGraph} can be built
+ * without instantiating the command. When building a graph, this annotation takes precedence over the
+ * {@code get*Dependencies()} methods of the command, which should return the same names.
+ * <p>
+ * The {@linkplain CommandFactoryProcessor} generates a {@linkplain CommandFactory} for every annotated class at compile
+ * time. Annotated classes must therefore be public, not abstract and have a public no-argument constructor.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Dependencies {
+
+	/**
+	 * @return names of commands that need to be executed before the command, see
+	 *         {@linkplain Command#getBeforeDependencies()}
+	 */
+	String[] before() default {};
+
+	/**
+	 * @return names of commands that can be executed after the command, see {@linkplain Command#getAfterDependencies()}
+	 */
+	String[] after() default {};
+
+	/**
+	 * @return see {@linkplain Command#getOptionalBeforeDependencies()}
+	 */
+	String[] optionalBefore() default {};
+
+	/**
+	 * @return see {@linkplain Command#getOptionalAfterDependencies()}
+	 */
+	String[] optionalAfter() default {};
+
+}
@@ -0,0 +1,219 @@
+package cc.commandmanager.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A {@linkplain ResultCache} that keeps every cached execution in a file of a directory, so that cached results survive
+ * restarts. Files are named by the SHA-256 hash of the command name, the command class name and the encoded input
+ * values, i.e. the cache is content-addressed. Values are encoded using a {@linkplain ValueCodec}.
+ * <p>
+ * The total size of all cached files is limited. If it is exceeded, the least recently used files will be deleted.
+ * Usage is tracked by the modification time of the files, so that it is kept across restarts. A cache directory must
+ * not be used by more than one {@linkplain DiskResultCache} at the same time.
+ * <p>
+ * Failing to read or write a file will be logged and treated like a cache miss.
+ */
+public class DiskResultCache implements ResultCache {
+
+	private static final Logger logger = Logger.getLogger(DiskResultCache.class);
+	private static final String ENTRY_SUFFIX = ".entry";
+
+	private final Path directory;
+	private final long maxBytes;
+	private final ValueCodec codec;
+	private final Map<String, Long> entrySizes;
+	private long totalBytes;
+
+	/**
+	 * Creates a {@linkplain DiskResultCache} which uses Java serialization to encode values.
+	 *
+	 * @param directory
+	 *            to keep the cached files in. Will be created if necessary.
+	 * @param maxBytes
+	 *            maximum total size of all cached files. Must be positive.
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created or read
+	 */
+	public DiskResultCache(Path directory, long maxBytes) {
+		this(directory, maxBytes, new SerializingValueCodec());
+	}
+
+	/**
+	 * Creates a {@linkplain DiskResultCache} which uses the given codec to encode values. Files already present in the
+	 * directory will be used.
+	 *
+	 * @param directory
+	 *            to keep the cached files in. Will be created if necessary.
+	 * @param maxBytes
+	 *            maximum total size of all cached files. Must be positive.
+	 * @param codec
+	 *            to encode input values and cached values with
+	 * @throws UncheckedIOException
+	 *             if the directory cannot be created or read
+	 */
+	public DiskResultCache(Path directory, long maxBytes, ValueCodec codec) {
+		this.directory = Check.notNull(directory, "directory");
+		Check.stateIsTrue(maxBytes > 0, "maxBytes must be positive");
+		this.maxBytes = maxBytes;
+		this.codec = Check.notNull(codec, "codec");
+		entrySizes = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		try {
+			Files.createDirectories(directory);
+			loadEntries();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot use cache directory " + directory, e);
+		}
+		evictLeastRecentlyUsed();
+	}
+
+	private void loadEntries() throws IOException {
+		List<Path> files = Lists.newArrayList();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+			for (Path file : entries) {
+				files.add(file);
+			}
+		}
+		final Map<Path, FileTime> lastUsed = Maps.newHashMap();
+		for (Path file : files) {
+			lastUsed.put(file, Files.getLastModifiedTime(file));
+		}
+		files.sort(new Comparator<Path>() {
+
+			@Override
+			public int compare(Path file, Path otherFile) {
+				return lastUsedOf(file).compareTo(lastUsedOf(otherFile));
+			}
+
+			// files without a modification time are considered the least recently used ones
+			private FileTime lastUsedOf(Path file) {
+				FileTime time = lastUsed.get(file);
+				return time != null ? time : FileTime.fromMillis(0);
+			}
+
+		});
+		for (Path file : files) {
+			String fileName = file.getFileName().toString();
+			long size = Files.size(file);
+			entrySizes.put(fileName.substring(0, fileName.length() - ENTRY_SUFFIX.length()), size);
+			totalBytes += size;
+		}
+	}
+
+	@Override
+	public synchronized Try<Map<Object, Object>> lookup(CommandClass command, Map<String, Object> inputs) {
+		String key;
+		try {
+			key = keyOf(command, inputs);
+		} catch (IOException e) {
+			logger.warn("Cannot encode the inputs of command " + command + ": " + e);
+			return new Try<Map<Object, Object>>(null, e);
+		}
+		// get, unlike containsKey, marks the entry as recently used
+		if (entrySizes.get(key) == null) {
+			return new Try<Map<Object, Object>>(null, "No cached result for " + command);
+		}
+
+		Path file = fileOf(key);
+		try {
+			@SuppressWarnings("unchecked")
+			Map<Object, Object> outputs = (Map<Object, Object>) codec.decode(Files.readAllBytes(file));
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return new Try<Map<Object, Object>>(outputs);
+		} catch (IOException | ClassCastException e) {
+			logger.warn("Cannot read cached result of command " + command + " from " + file + ": " + e);
+			delete(key);
+			return new Try<Map<Object, Object>>(null, e);
+		}
+	}
+
+	@Override
+	public synchronized void store(CommandClass command, Map<String, Object> inputs, Map<Object, Object> outputs) {
+		Check.notNull(outputs, "outputs");
+		Path file = null;
+		try {
+			String key = keyOf(command, inputs);
+			byte[] bytes = codec.encode(Maps.newLinkedHashMap(outputs));
+			if (bytes.length > maxBytes) {
+				logger.info("Result of command " + command + " is too big to be cached: " + bytes.length + " bytes");
+				return;
+			}
+
+			file = fileOf(key);
+			Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temporaryFile, bytes);
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Long replacedSize = entrySizes.put(key, (long) bytes.length);
+			totalBytes += bytes.length - (replacedSize == null ? 0 : replacedSize);
+			evictLeastRecentlyUsed();
+		} catch (IOException e) {
+			logger.warn("Cannot cache result of command " + command + (file == null ? "" : " in " + file) + ": " + e);
+		}
+	}
+
+	/**
+	 * @return total size of all cached files in bytes
+	 */
+	public synchronized long size() {
+		return totalBytes;
+	}
+
+	private void evictLeastRecentlyUsed() {
+		Iterator<String> leastRecentlyUsed = Lists.newArrayList(entrySizes.keySet()).iterator();
+		while (totalBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+			delete(leastRecentlyUsed.next());
+		}
+	}
+
+	private void delete(String key) {
+		Long size = entrySizes.remove(key);
+		if (size != null) {
+			totalBytes -= size;
+		}
+		try {
+			Files.deleteIfExists(fileOf(key));
+		} catch (IOException e) {
+			logger.warn("Cannot delete cached result " + fileOf(key) + ": " + e);
+		}
+	}
+
+	private Path fileOf(String key) {
+		return directory.resolve(key + ENTRY_SUFFIX);
+	}
+
+	private String keyOf(CommandClass command, Map<String, Object> inputs) throws IOException {
+		Check.notNull(command, "command");
+		Check.notNull(inputs, "inputs");
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(command.getName(), StandardCharsets.UTF_8).putChar('\0');
+		hasher.putString(command.getClassName(), StandardCharsets.UTF_8).putChar('\0');
+		for (Map.Entry<String, Object> input : new TreeMap<String, Object>(inputs).entrySet()) {
+			byte[] value = codec.encode(input.getValue());
+			hasher.putString(input.getKey(), StandardCharsets.UTF_8).putChar('\0');
+			hasher.putInt(value.length).putBytes(value);
+		}
+		return hasher.hash().toString();
+	}
+
+}
@@ -0,0 +1,29 @@
+package cc.commandmanager.core;
+
+/**
+ * Stores how long the execution of {@linkplain Command}s took. Recorded durations can be used to estimate how long the
+ * next execution of a command will take, e.g. by {@linkplain CriticalPathFirst}.
+ * <p>
+ * Implementations must be thread-safe since commands executed in parallel record their durations concurrently.
+ */
+public interface DurationStore {
+
+	/**
+	 * Record the duration of a single execution of the given command.
+	 *
+	 * @param command
+	 *            that was executed
+	 * @param durationMillis
+	 *            the execution took in milliseconds
+	 */
+	void record(CommandClass command, long durationMillis);
+
+	/**
+	 * @param command
+	 *            to estimate the execution duration of
+	 * @return A {@linkplain Try} containing the estimated execution duration of the given command in milliseconds.
+	 *         {@linkplain Try#isPresent()} returns false if no duration has been recorded for the command, yet.
+	 */
+	Try<Long> getDuration(CommandClass command);
+
+}
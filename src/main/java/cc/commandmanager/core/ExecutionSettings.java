@@ -0,0 +1,61 @@
+package cc.commandmanager.core;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Configuration of how a {@linkplain CommandManager} executes its commands. See
+ * {@linkplain CommandManager.CommandManagerBuilder} for the meaning of each setting.
+ */
+@Immutable
+final class ExecutionSettings {
+
+	/**
+	 * Settings for executing one command after another in the calling thread.
+	 */
+	static final ExecutionSettings SEQUENTIAL = new ExecutionSettings(null, 1, null, null,
+			ImmutableMap.<String, Integer> of(), null, null, null, null, false, RetryPolicy.NONE);
+
+	@Nullable
+	final ExecutorService executor;
+	final int parallelism;
+	@Nullable
+	final SchedulingPolicy schedulingPolicy;
+	@Nullable
+	final DurationStore durationStore;
+	final ImmutableMap<String, Integer> resourceLimits;
+	@Nullable
+	final FingerprintStore fingerprintStore;
+	@Nullable
+	final ValueCodec fingerprintCodec;
+	@Nullable
+	final ResultCache resultCache;
+	@Nullable
+	final CheckpointStore checkpointStore;
+	final boolean continueOnFailure;
+	final RetryPolicy retryPolicy;
+
+	ExecutionSettings(@Nullable ExecutorService executor, int parallelism,
+			@Nullable SchedulingPolicy schedulingPolicy, @Nullable DurationStore durationStore,
+			Map<String, Integer> resourceLimits, @Nullable FingerprintStore fingerprintStore,
+			@Nullable ValueCodec fingerprintCodec, @Nullable ResultCache resultCache,
+			@Nullable CheckpointStore checkpointStore, boolean continueOnFailure, RetryPolicy retryPolicy) {
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.schedulingPolicy = schedulingPolicy;
+		this.durationStore = durationStore;
+		this.resourceLimits = ImmutableMap.copyOf(resourceLimits);
+		this.fingerprintStore = fingerprintStore;
+		this.fingerprintCodec = fingerprintCodec;
+		this.resultCache = resultCache;
+		this.checkpointStore = checkpointStore;
+		this.continueOnFailure = continueOnFailure;
+		this.retryPolicy = retryPolicy;
+	}
+
+}
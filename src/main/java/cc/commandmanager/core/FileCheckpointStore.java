@@ -0,0 +1,70 @@
+package cc.commandmanager.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A {@linkplain CheckpointStore} that keeps the latest {@linkplain Checkpoint} in a file using Java serialization. The
+ * file will be replaced atomically, so that it always contains a complete checkpoint. Failing to write the file will be
+ * logged, but will not abort the execution.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+	private static final Logger logger = Logger.getLogger(FileCheckpointStore.class);
+
+	private final Path file;
+	private final ValueCodec codec = new SerializingValueCodec();
+
+	/**
+	 * @param file
+	 *            to keep the checkpoint in. Its directory must exist.
+	 */
+	public FileCheckpointStore(Path file) {
+		this.file = Check.notNull(file, "file").toAbsolutePath();
+	}
+
+	@Override
+	public synchronized void save(Checkpoint checkpoint) {
+		Check.notNull(checkpoint, "checkpoint");
+		try {
+			Path temporaryFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temporaryFile, codec.encode(checkpoint));
+				Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot save checkpoint to " + file + ": " + e);
+		}
+	}
+
+	@Override
+	public synchronized Try<Checkpoint> load() {
+		if (!Files.exists(file)) {
+			return new Try<Checkpoint>(null, "No checkpoint saved in " + file);
+		}
+		try {
+			return new Try<Checkpoint>((Checkpoint) codec.decode(Files.readAllBytes(file)));
+		} catch (IOException | ClassCastException e) {
+			logger.warn("Cannot load checkpoint from " + file + ": " + e);
+			return new Try<Checkpoint>(null, e);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			logger.warn("Cannot delete checkpoint " + file + ": " + e);
+		}
+	}
+
+}
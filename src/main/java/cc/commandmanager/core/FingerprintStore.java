@@ -0,0 +1,31 @@
+package cc.commandmanager.core;
+
+/**
+ * Stores the {@linkplain CommandFingerprint} of the last execution of {@linkplain Command}s. In incremental mode a
+ * command will be skipped if its fingerprint did not change since its last execution.
+ * <p>
+ * Implementations must be thread-safe since commands executed in parallel record their fingerprints concurrently.
+ *
+ * @see CommandManager.CommandManagerBuilder#incremental(FingerprintStore)
+ */
+public interface FingerprintStore {
+
+	/**
+	 * Record the outcome of the latest execution of the given command, replacing any previously recorded one.
+	 *
+	 * @param command
+	 *            that was executed
+	 * @param fingerprint
+	 *            of the execution
+	 */
+	void record(CommandClass command, CommandFingerprint fingerprint);
+
+	/**
+	 * @param command
+	 *            to look up
+	 * @return A {@linkplain Try} containing the fingerprint of the latest execution of the given command.
+	 *         {@linkplain Try#isPresent()} returns false if no execution has been recorded for the command, yet.
+	 */
+	Try<CommandFingerprint> getFingerprint(CommandClass command);
+
+}
@@ -0,0 +1,249 @@
+package cc.commandmanager.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import net.sf.qualitycheck.Check;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Binary snapshot of a {@linkplain CommandGraph} built from a catalog file. It stores the commands in topological
+ * order together with their dependencies, so that the graph can be restored without parsing the catalog or
+ * instantiating any command.
+ * <p>
+ * A snapshot records the modification time, size and SHA-256 hash of the catalog it was built from. It is only used if
+ * the catalog still has the same modification time and size, or else the same content. In the latter case the recorded
+ * modification time and size will be updated, so that the catalog need not be hashed again. Changes of command classes
+ * are not detected, so snapshots must be deleted when the dependencies declared by command classes change.
+ * <p>
+ * Snapshots are read through a memory-mapped file directly into the arrays of a {@linkplain CommandGraph} and replaced
+ * atomically when written.
+ */
+@Immutable
+final class GraphSnapshot {
+
+	private static final Logger logger = Logger.getLogger(GraphSnapshot.class);
+
+	private static final int MAGIC = 0x434d4753;
+	private static final int VERSION = 1;
+	private static final int NO_STRING = -1;
+	/**
+	 * Position of the recorded modification time and size of the catalog, which follow the magic number and version.
+	 */
+	private static final int CATALOG_STATE_POSITION = 2 * Integer.BYTES;
+
+	private final long catalogModified;
+	private final long catalogSize;
+	private final byte[] catalogHash;
+
+	private GraphSnapshot(long catalogModified, long catalogSize, byte[] catalogHash) {
+		this.catalogModified = catalogModified;
+		this.catalogSize = catalogSize;
+		this.catalogHash = catalogHash;
+	}
+
+	/**
+	 * Records the current state of the given catalog. Must be called before the catalog is parsed, so that a snapshot
+	 * never claims a newer state of the catalog than the graph was built from.
+	 */
+	static GraphSnapshot of(File catalogFile) throws IOException {
+		Check.notNull(catalogFile, "catalogFile");
+		long modified = catalogFile.lastModified();
+		long size = catalogFile.length();
+		return new GraphSnapshot(modified, size, hash(catalogFile));
+	}
+
+	private static byte[] hash(File catalogFile) throws IOException {
+		return com.google.common.io.Files.asByteSource(catalogFile).hash(Hashing.sha256()).asBytes();
+	}
+
+	/**
+	 * Restores a graph from the snapshot file if it has been written for the current state of the catalog.
+	 * 
+	 * @return the restored graph, or a note why the snapshot cannot be used
+	 */
+	static Try<CommandGraph> read(Path snapshotFile, File catalogFile) {
+		Check.notNull(snapshotFile, "snapshotFile");
+		Check.notNull(catalogFile, "catalogFile");
+		if (!Files.isRegularFile(snapshotFile)) {
+			return new Try<CommandGraph>(null, "No snapshot in " + snapshotFile);
+		}
+		long catalogModified = catalogFile.lastModified();
+		long catalogSize = catalogFile.length();
+		boolean catalogStateChanged;
+		Try<CommandGraph> graph;
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				return new Try<CommandGraph>(null, "Unknown snapshot format in " + snapshotFile);
+			}
+			long modified = buffer.getLong();
+			long size = buffer.getLong();
+			byte[] hash = new byte[buffer.getInt()];
+			buffer.get(hash);
+			catalogStateChanged = modified != catalogModified || size != catalogSize;
+			if (catalogStateChanged && !Arrays.equals(hash, hash(catalogFile))) {
+				return new Try<CommandGraph>(null, "Snapshot " + snapshotFile + " is outdated");
+			}
+			graph = readGraph(buffer, snapshotFile);
+		} catch (IOException | RuntimeException e) {
+			// a truncated or corrupt snapshot is rebuilt like an outdated one
+			return new Try<CommandGraph>(null, e);
+		}
+		if (catalogStateChanged && graph.isPresent()) {
+			updateCatalogState(snapshotFile, catalogModified, catalogSize);
+		}
+		return graph;
+	}
+
+	private static Try<CommandGraph> readGraph(MappedByteBuffer buffer, Path snapshotFile) {
+		CommandClass[] commands = new CommandClass[buffer.getInt()];
+		for (int index = 0; index < commands.length; index++) {
+			String name = readString(buffer);
+			String className = readString(buffer);
+			String resourceClass = readString(buffer);
+			int resourceWeight = buffer.getInt();
+			long timeoutMillis = buffer.getLong();
+			commands[index] = new CommandClass(name, className, resourceClass, resourceWeight, timeoutMillis);
+		}
+		int[] dependencyOffsets = new int[commands.length + 1];
+		int[] dependencyIds = new int[buffer.getInt()];
+		BitSet mandatoryDependencies = new BitSet(dependencyIds.length);
+		int source = 0;
+		for (int dependency = 0; dependency < dependencyIds.length; dependency++) {
+			int dependent = buffer.getInt();
+			if (dependent < source || dependent >= commands.length) {
+				return new Try<CommandGraph>(null, "Corrupt snapshot " + snapshotFile);
+			}
+			while (source < dependent) {
+				dependencyOffsets[++source] = dependency;
+			}
+			dependencyIds[dependency] = buffer.getInt();
+			if (dependencyIds[dependency] < 0 || dependencyIds[dependency] >= commands.length) {
+				return new Try<CommandGraph>(null, "Corrupt snapshot " + snapshotFile);
+			}
+			mandatoryDependencies.set(dependency, buffer.get() != 0);
+		}
+		while (source < commands.length) {
+			dependencyOffsets[++source] = dependencyIds.length;
+		}
+		return new Try<CommandGraph>(CommandGraph.fromTopologicalOrdering(Arrays.asList(commands),
+				dependencyOffsets, dependencyIds, mandatoryDependencies));
+	}
+
+	/**
+	 * Records the current modification time and size of a catalog whose content did not change.
+	 */
+	private static void updateCatalogState(Path snapshotFile, long catalogModified, long catalogSize) {
+		ByteBuffer catalogState = ByteBuffer.allocate(2 * Long.BYTES);
+		catalogState.putLong(catalogModified).putLong(catalogSize).flip();
+		try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.WRITE)) {
+			while (catalogState.hasRemaining()) {
+				channel.write(catalogState, CATALOG_STATE_POSITION + catalogState.position());
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot update snapshot " + snapshotFile + ": " + e);
+		}
+	}
+
+	@Nullable
+	private static String readString(MappedByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length == NO_STRING) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a snapshot of the given graph, which has been built from the catalog in the state recorded by this
+	 * {@linkplain GraphSnapshot}.
+	 */
+	void write(CommandGraph graph, Path snapshotFile) throws IOException {
+		Check.notNull(graph, "graph");
+		Check.notNull(snapshotFile, "snapshotFile");
+		Path directory = snapshotFile.toAbsolutePath().getParent();
+		Path temporaryFile = Files.createTempFile(directory, snapshotFile.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(temporaryFile)))) {
+				writeGraph(output, graph);
+			}
+			Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	private void writeGraph(DataOutputStream output, CommandGraph graph) throws IOException {
+		List<CommandClass> commands = graph.topologicalOrderOfAllCommands();
+		Map<String, Integer> indices = Maps.newHashMapWithExpectedSize(commands.size());
+		List<int[]> dependencies = Lists.newArrayList();
+
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeLong(catalogModified);
+		output.writeLong(catalogSize);
+		output.writeInt(catalogHash.length);
+		output.write(catalogHash);
+
+		output.writeInt(commands.size());
+		for (CommandClass command : commands) {
+			indices.put(command.getName(), indices.size());
+			writeString(output, command.getName());
+			writeString(output, command.getClassName());
+			writeString(output, command.getDeclaredResourceClass());
+			output.writeInt(command.getDeclaredResourceWeight());
+			output.writeLong(command.getDeclaredTimeoutMillis());
+		}
+		for (CommandClass command : commands) {
+			for (CommandClass dependency : graph.getMandatoryDependencies(command.getName())) {
+				dependencies.add(new int[] { indices.get(command.getName()), indices.get(dependency.getName()), 1 });
+			}
+			for (CommandClass dependency : graph.getOptionalDependencies(command.getName())) {
+				dependencies.add(new int[] { indices.get(command.getName()), indices.get(dependency.getName()), 0 });
+			}
+		}
+		output.writeInt(dependencies.size());
+		for (int[] dependency : dependencies) {
+			output.writeInt(dependency[0]);
+			output.writeInt(dependency[1]);
+			output.writeByte(dependency[2]);
+		}
+	}
+
+	private static void writeString(DataOutputStream output, @Nullable String value) throws IOException {
+		if (value == null) {
+			output.writeInt(NO_STRING);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+}
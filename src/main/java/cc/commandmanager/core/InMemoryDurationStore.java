@@ -0,0 +1,59 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@linkplain DurationStore} that keeps the durations in memory. The estimated duration of a command is the
+ * exponential moving average of all of its recorded durations, so that recent executions have the biggest influence.
+ */
+public class InMemoryDurationStore implements DurationStore {
+
+	private static final double DEFAULT_SMOOTHING_FACTOR = 0.5;
+
+	private final double smoothingFactor;
+	private final ConcurrentMap<CommandClass, Double> durations;
+
+	/**
+	 * Creates a new empty {@linkplain InMemoryDurationStore} which weights each newly recorded duration by one half.
+	 */
+	public InMemoryDurationStore() {
+		this(DEFAULT_SMOOTHING_FACTOR);
+	}
+
+	/**
+	 * Creates a new empty {@linkplain InMemoryDurationStore}.
+	 *
+	 * @param smoothingFactor
+	 *            weight of a newly recorded duration. Must be greater than 0 and at most 1. Only the latest recorded
+	 *            duration will be taken into account if the factor is 1.
+	 */
+	public InMemoryDurationStore(double smoothingFactor) {
+		Check.stateIsTrue(smoothingFactor > 0 && smoothingFactor <= 1, "smoothingFactor must be in (0, 1]");
+		this.smoothingFactor = smoothingFactor;
+		durations = Maps.newConcurrentMap();
+	}
+
+	@Override
+	public synchronized void record(CommandClass command, long durationMillis) {
+		Check.notNull(command, "command");
+		Check.stateIsTrue(durationMillis >= 0, "durationMillis must not be negative");
+		Double average = durations.get(command);
+		durations.put(command, average == null ? durationMillis : smoothingFactor * durationMillis
+				+ (1 - smoothingFactor) * average);
+	}
+
+	@Override
+	public Try<Long> getDuration(CommandClass command) {
+		Check.notNull(command, "command");
+		Double duration = durations.get(command);
+		if (duration == null) {
+			return new Try<Long>(null, "No duration recorded for " + command);
+		}
+		return new Try<Long>(Math.round(duration));
+	}
+
+}
@@ -0,0 +1,32 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@linkplain FingerprintStore} that keeps the fingerprints in memory. Commands can only be skipped as long as the
+ * same store is used, e.g. by re-using a {@linkplain CommandManager} within the same process.
+ */
+public class InMemoryFingerprintStore implements FingerprintStore {
+
+	private final ConcurrentMap<CommandClass, CommandFingerprint> fingerprints = Maps.newConcurrentMap();
+
+	@Override
+	public void record(CommandClass command, CommandFingerprint fingerprint) {
+		fingerprints.put(Check.notNull(command, "command"), Check.notNull(fingerprint, "fingerprint"));
+	}
+
+	@Override
+	public Try<CommandFingerprint> getFingerprint(CommandClass command) {
+		Check.notNull(command, "command");
+		CommandFingerprint fingerprint = fingerprints.get(command);
+		if (fingerprint == null) {
+			return new Try<CommandFingerprint>(null, "No fingerprint recorded for " + command);
+		}
+		return new Try<CommandFingerprint>(fingerprint);
+	}
+
+}
@@ -0,0 +1,173 @@
+package cc.commandmanager.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A view on a {@linkplain Context} which passes every call on to that context while recording which keys were read
+ * and which keys were bound. Keys that were bound through this view are not considered as inputs when they are read
+ * afterwards. Copying the view reads every key that has not been bound through it.
+ */
+final class RecordingContext extends Context {
+
+	/**
+	 * Value of an input key that was not bound when it was read.
+	 */
+	static final Object UNBOUND = new Object();
+
+	private final Context context;
+	private final Map<Object, Object> inputs;
+	private final Set<Object> outputKeys;
+
+	/**
+	 * @param context
+	 *            to pass every call on to
+	 */
+	RecordingContext(Context context) {
+		this.context = Check.notNull(context, "context");
+		inputs = Maps.newLinkedHashMap();
+		outputKeys = Sets.newLinkedHashSet();
+	}
+
+	/**
+	 * Retrieve the current values of the given keys from the given context.
+	 *
+	 * @param context
+	 *            to read the values from
+	 * @param keys
+	 *            to read
+	 * @return the value bound to each key or {@linkplain #UNBOUND} in the order of the given keys
+	 */
+	static Map<Object, Object> valuesOf(Context context, List<Object> keys) {
+		Map<Object, Object> values = Maps.newLinkedHashMap();
+		synchronized (context) {
+			for (Object key : keys) {
+				values.put(key, context.containsKey(key) ? context.get(key) : UNBOUND);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Bind the given values to the given context. Values already bound to one of the keys will be replaced.
+	 *
+	 * @param context
+	 *            to bind the values to
+	 * @param values
+	 *            to bind
+	 */
+	static void restore(Context context, Map<Object, Object> values) {
+		synchronized (context) {
+			for (Map.Entry<Object, Object> value : values.entrySet()) {
+				if (context.containsKey(value.getKey())) {
+					context.rebind(value.getKey(), value.getValue());
+				} else {
+					context.bind(value.getKey(), value.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bind the given values to the underlying context as if they were bound through this view. Values already bound to
+	 * one of the keys will be replaced.
+	 *
+	 * @param values
+	 *            to bind
+	 */
+	synchronized void restore(Map<Object, Object> values) {
+		restore(context, values);
+		outputKeys.addAll(values.keySet());
+	}
+
+	/**
+	 * @return the value of every key read through this view when it was read for the first time, or
+	 *         {@linkplain #UNBOUND}, in the order the keys were read first.
+	 */
+	synchronized Map<Object, Object> getInputs() {
+		return Maps.newLinkedHashMap(inputs);
+	}
+
+	/**
+	 * @return the current value of every key bound through this view that is still bound.
+	 */
+	synchronized Map<Object, Object> getOutputs() {
+		Map<Object, Object> outputs = Maps.newLinkedHashMap();
+		synchronized (context) {
+			for (Object key : outputKeys) {
+				if (context.containsKey(key)) {
+					outputs.put(key, context.get(key));
+				}
+			}
+		}
+		return outputs;
+	}
+
+	private void recordInput(Object key) {
+		if (!outputKeys.contains(key) && !inputs.containsKey(key)) {
+			inputs.putAll(valuesOf(context, Collections.singletonList(key)));
+		}
+	}
+
+	@Override
+	public synchronized void bind(Object key, @Nullable Object value) {
+		context.bind(key, value);
+		outputKeys.add(key);
+	}
+
+	@Override
+	public synchronized void unbind(Object key) {
+		recordInput(Check.notNull(key));
+		context.unbind(key);
+	}
+
+	@Override
+	public synchronized void rebind(Object key, @Nullable Object value) {
+		recordInput(Check.notNull(key));
+		context.rebind(key, value);
+		outputKeys.add(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		recordInput(Check.notNull(key));
+		return context.containsKey(key);
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+		recordInput(Check.notNull(key));
+		return context.get(key);
+	}
+
+	@Override
+	synchronized Map<Object, Object> copyOfItems() {
+		Map<Object, Object> items = context.copyOfItems();
+		for (Map.Entry<Object, Object> item : items.entrySet()) {
+			if (!outputKeys.contains(item.getKey()) && !inputs.containsKey(item.getKey())) {
+				inputs.put(item.getKey(), item.getValue());
+			}
+		}
+		return items;
+	}
+
+	@Override
+	public boolean equals(Object context) {
+		return this.context.equals(context);
+	}
+
+	@Override
+	public int hashCode() {
+		return context.hashCode();
+	}
+
+}
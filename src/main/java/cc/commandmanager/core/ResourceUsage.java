@@ -0,0 +1,31 @@
+package cc.commandmanager.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares which kind of resource a {@linkplain Command} implementation mainly uses, e.g. {@code "CPU"},
+ * {@code "DISK"} or {@code "NETWORK"}. A {@linkplain CommandManager} can limit how many commands of each resource class
+ * run at the same time, see {@linkplain CommandManager.CommandManagerBuilder#resourceLimit(String, int)}.
+ * <p>
+ * A resource class declared in the catalog takes precedence over this annotation.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ResourceUsage {
+
+	/**
+	 * @return name of the resource class
+	 */
+	String value();
+
+	/**
+	 * @return how much of the resource class's capacity a single execution of the command occupies. Must be positive.
+	 */
+	int weight() default 1;
+
+}
@@ -0,0 +1,37 @@
+package cc.commandmanager.core;
+
+import java.util.Map;
+
+/**
+ * Caches the values {@linkplain Cacheable} {@linkplain Command}s bound to the {@linkplain Context} during successful
+ * executions, so that they can be bound again instead of executing the command.
+ * <p>
+ * Implementations must be thread-safe since commands executed in parallel use the cache concurrently.
+ *
+ * @see CommandManager.CommandManagerBuilder#resultCache(ResultCache)
+ */
+public interface ResultCache {
+
+	/**
+	 * @param command
+	 *            to look up
+	 * @param inputs
+	 *            values bound to the input keys declared by the command. Keys that are not bound are missing.
+	 * @return A {@linkplain Try} containing the values the command bound during an execution with the same inputs.
+	 *         {@linkplain Try#isPresent()} returns false if no such execution has been cached.
+	 */
+	Try<Map<Object, Object>> lookup(CommandClass command, Map<String, Object> inputs);
+
+	/**
+	 * Cache the values the command bound during a successful execution.
+	 *
+	 * @param command
+	 *            that was executed
+	 * @param inputs
+	 *            values bound to the input keys declared by the command. Keys that are not bound are missing.
+	 * @param outputs
+	 *            values the command bound to the {@linkplain Context}. Values may be null.
+	 */
+	void store(CommandClass command, Map<String, Object> inputs, Map<Object, Object> outputs);
+
+}
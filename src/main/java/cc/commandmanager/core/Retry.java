@@ -0,0 +1,52 @@
+package cc.commandmanager.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that a {@linkplain Command} implementation which returned a {@linkplain ResultState.Failure} should be
+ * executed again, e.g. because it fails transiently when talking to a service. Attempts are delayed by an exponentially
+ * growing backoff. See {@linkplain RetryPolicy} for the meaning of each attribute.
+ * <p>
+ * This annotation takes precedence over {@linkplain CommandManager.CommandManagerBuilder#retryPolicy(RetryPolicy)}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Retry {
+
+	/**
+	 * @return maximum number of executions including the first one. Must be positive.
+	 */
+	int maxAttempts();
+
+	/**
+	 * @return delay before the second attempt in milliseconds
+	 */
+	long initialDelayMillis() default 100;
+
+	/**
+	 * @return factor by which the delay grows with every further attempt. Must be at least 1.
+	 */
+	double multiplier() default 2;
+
+	/**
+	 * @return maximum delay between two attempts in milliseconds
+	 */
+	long maxDelayMillis() default 60000;
+
+	/**
+	 * @return fraction of the delay by which it is randomly shortened. Must be between 0 and 1.
+	 */
+	double jitter() default 0.5;
+
+	/**
+	 * @return types of failure causes to retry on. Failures having other causes or no cause will not be retried. If
+	 *         empty, every failure will be retried.
+	 */
+	Class<? extends Throwable>[] retryOn() default {};
+
+}
@@ -0,0 +1,196 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.concurrent.Immutable;
+
+import net.sf.qualitycheck.Check;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Decides whether and when a {@linkplain Command} that returned a {@linkplain ResultState.Failure} will be executed
+ * again. The delay before attempt <i>n + 1</i> is {@code initialDelayMillis * multiplier^(n - 1)}, limited by
+ * {@code maxDelayMillis} and randomly shortened by up to {@code jitter} of it, so that commands failing at the same
+ * time do not retry at the same time.
+ * <p>
+ * Only failures are retried. Exceptions thrown by a {@linkplain Command} abort the execution as before.
+ *
+ * @see Retry
+ * @see CommandManager.CommandManagerBuilder#retryPolicy(RetryPolicy)
+ */
+@Immutable
+public final class RetryPolicy {
+
+	/**
+	 * Never retry a failed command.
+	 */
+	public static final RetryPolicy NONE = builder().maxAttempts(1).build();
+
+	private final int maxAttempts;
+	private final long initialDelayMillis;
+	private final double multiplier;
+	private final long maxDelayMillis;
+	private final double jitter;
+	private final ImmutableSet<Class<? extends Throwable>> retryOn;
+
+	private RetryPolicy(RetryPolicyBuilder builder) {
+		maxAttempts = builder.maxAttempts;
+		initialDelayMillis = builder.initialDelayMillis;
+		multiplier = builder.multiplier;
+		maxDelayMillis = builder.maxDelayMillis;
+		jitter = builder.jitter;
+		retryOn = builder.retryOn.build();
+	}
+
+	/**
+	 * @return a builder for a policy with the defaults of {@linkplain Retry} which does not retry unless
+	 *         {@linkplain RetryPolicyBuilder#maxAttempts(int)} is set.
+	 */
+	public static RetryPolicyBuilder builder() {
+		return new RetryPolicyBuilder();
+	}
+
+	/**
+	 * @param retry
+	 *            annotation of a command class
+	 * @return the policy declared by the annotation
+	 */
+	static RetryPolicy of(Retry retry) {
+		return builder().maxAttempts(retry.maxAttempts()).backoff(retry.initialDelayMillis(), retry.multiplier())
+				.maxDelay(retry.maxDelayMillis()).jitter(retry.jitter()).retryOn(retry.retryOn()).build();
+	}
+
+	/**
+	 * @param resultState
+	 *            returned by the latest attempt
+	 * @param attempt
+	 *            number of the latest attempt, starting with 1
+	 * @return whether the command should be executed again
+	 */
+	public boolean shouldRetry(ResultState resultState, int attempt) {
+		Check.notNull(resultState, "resultState");
+		if (!resultState.isFailure() || attempt >= maxAttempts) {
+			return false;
+		}
+		if (retryOn.isEmpty()) {
+			return true;
+		}
+		for (Class<? extends Throwable> causeType : retryOn) {
+			if (causeType.isInstance(resultState.getCause())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param attempt
+	 *            number of the failed attempt, starting with 1
+	 * @return milliseconds to wait before the next attempt
+	 */
+	public long delayMillis(int attempt) {
+		Check.stateIsTrue(attempt > 0, "attempt must be positive");
+		double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, attempt - 1));
+		return Math.round(delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this).add("maxAttempts", maxAttempts)
+				.add("initialDelayMillis", initialDelayMillis).add("multiplier", multiplier)
+				.add("maxDelayMillis", maxDelayMillis).add("jitter", jitter).add("retryOn", retryOn).toString();
+	}
+
+	/**
+	 * A builder for a {@linkplain RetryPolicy}. Unset values default to the ones of {@linkplain Retry}.
+	 */
+	public static class RetryPolicyBuilder {
+
+		private int maxAttempts = 1;
+		private long initialDelayMillis = 100;
+		private double multiplier = 2;
+		private long maxDelayMillis = 60000;
+		private double jitter = 0.5;
+		private final ImmutableSet.Builder<Class<? extends Throwable>> retryOn = ImmutableSet.builder();
+
+		private RetryPolicyBuilder() {
+		}
+
+		/**
+		 * @param maxAttempts
+		 *            maximum number of executions including the first one. Must be positive.
+		 * @return this builder
+		 */
+		public RetryPolicyBuilder maxAttempts(int maxAttempts) {
+			Check.stateIsTrue(maxAttempts > 0, "maxAttempts must be positive");
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * @param initialDelayMillis
+		 *            delay before the second attempt in milliseconds. Must not be negative.
+		 * @param multiplier
+		 *            factor by which the delay grows with every further attempt. Must be at least 1.
+		 * @return this builder
+		 */
+		public RetryPolicyBuilder backoff(long initialDelayMillis, double multiplier) {
+			Check.stateIsTrue(initialDelayMillis >= 0, "initialDelayMillis must not be negative");
+			Check.stateIsTrue(multiplier >= 1, "multiplier must be at least 1");
+			this.initialDelayMillis = initialDelayMillis;
+			this.multiplier = multiplier;
+			return this;
+		}
+
+		/**
+		 * @param maxDelayMillis
+		 *            maximum delay between two attempts in milliseconds. Must not be negative.
+		 * @return this builder
+		 */
+		public RetryPolicyBuilder maxDelay(long maxDelayMillis) {
+			Check.stateIsTrue(maxDelayMillis >= 0, "maxDelayMillis must not be negative");
+			this.maxDelayMillis = maxDelayMillis;
+			return this;
+		}
+
+		/**
+		 * @param jitter
+		 *            fraction of the delay by which it is randomly shortened. Must be between 0 and 1.
+		 * @return this builder
+		 */
+		public RetryPolicyBuilder jitter(double jitter) {
+			Check.stateIsTrue(jitter >= 0 && jitter <= 1, "jitter must be in [0, 1]");
+			this.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * Retry only failures whose cause is an instance of one of the given types. Can be called repeatedly to add
+		 * more types. If never called, every failure will be retried.
+		 *
+		 * @param causeTypes
+		 *            to retry on
+		 * @return this builder
+		 */
+		@SafeVarargs
+		public final RetryPolicyBuilder retryOn(Class<? extends Throwable>... causeTypes) {
+			retryOn.add(Check.noNullElements(causeTypes, "causeTypes"));
+			return this;
+		}
+
+		/**
+		 * @return a new {@linkplain RetryPolicy}
+		 */
+		public RetryPolicy build() {
+			return new RetryPolicy(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,24 @@
+package cc.commandmanager.core;
+
+import java.util.List;
+
+/**
+ * Decides which {@linkplain Command} will be started first when several commands are ready to be executed at the same
+ * time. This only matters if there are more ready commands than commands that are allowed to run in parallel.
+ */
+public interface SchedulingPolicy {
+
+	/**
+	 * Compute the priorities of the given commands. Commands having a higher priority will be started before ready
+	 * commands having a lower priority. Commands having the same priority will be started in the given order.
+	 *
+	 * @param graph
+	 *            containing the given commands and their dependencies
+	 * @param commands
+	 *            that are going to be executed in topological order. Dependencies on commands that are not part of this
+	 *            list are ignored during execution.
+	 * @return one priority per command. The priority at index <i>i</i> belongs to the command at index <i>i</i>.
+	 */
+	long[] prioritize(CommandGraph graph, List<CommandClass> commands);
+
+}
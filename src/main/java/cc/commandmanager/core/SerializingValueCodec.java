@@ -0,0 +1,38 @@
+package cc.commandmanager.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import javax.annotation.Nullable;
+
+import net.sf.qualitycheck.Check;
+
+/**
+ * A {@linkplain ValueCodec} using Java serialization. Values must be {@linkplain java.io.Serializable}.
+ */
+public class SerializingValueCodec implements ValueCodec {
+
+	@Override
+	public byte[] encode(@Nullable Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(value);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	@Nullable
+	public Object decode(byte[] bytes) throws IOException {
+		Check.notNull(bytes, "bytes");
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return input.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package cc.commandmanager.core;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how long a single execution of a {@linkplain Command} implementation may take. When the timeout expires, the
+ * execution of the command will be reported as {@linkplain ResultState.Failure} and its
+ * {@linkplain CancellationToken} will be cancelled.
+ * <p>
+ * A timeout declared in the catalog takes precedence over this annotation.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Timeout {
+
+	/**
+	 * @return maximum duration of an execution. Must be positive.
+	 */
+	long value();
+
+	/**
+	 * @return unit of {@linkplain #value()}
+	 */
+	TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+}
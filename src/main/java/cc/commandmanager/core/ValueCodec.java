@@ -0,0 +1,32 @@
+package cc.commandmanager.core;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Converts {@linkplain Context} values to bytes and back, e.g. to persist them in a {@linkplain DiskResultCache}.
+ * Equal values should be encoded to equal bytes.
+ */
+public interface ValueCodec {
+
+	/**
+	 * @param value
+	 *            to encode, may be null
+	 * @return the encoded value
+	 * @throws IOException
+	 *             if the value cannot be encoded
+	 */
+	byte[] encode(@Nullable Object value) throws IOException;
+
+	/**
+	 * @param bytes
+	 *            as returned by {@linkplain #encode(Object)}
+	 * @return the decoded value, may be null
+	 * @throws IOException
+	 *             if the bytes cannot be decoded
+	 */
+	@Nullable
+	Object decode(byte[] bytes) throws IOException;
+
+}
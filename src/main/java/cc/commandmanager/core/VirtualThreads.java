@@ -0,0 +1,39 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Creates executors that start a new thread for every submitted task. This is the variant for Java runtimes without
+ * virtual threads. The multi-release jar contains a variant for Java 21 and later in {@code META-INF/versions/21}
+ * which uses virtual threads instead.
+ */
+final class VirtualThreads {
+
+	private static final Logger logger = Logger.getLogger(VirtualThreads.class);
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return whether {@linkplain #newThreadPerTaskExecutor()} creates virtual threads on this runtime
+	 */
+	static boolean areSupported() {
+		return false;
+	}
+
+	/**
+	 * @return an executor that runs every task on its own thread. Since virtual threads are not supported on this
+	 *         runtime, idle platform daemon threads will be reused instead.
+	 */
+	static ExecutorService newThreadPerTaskExecutor() {
+		logger.warn("Virtual threads are not supported by this Java runtime. Falling back to platform threads.");
+		return Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("command-execution-%d").build());
+	}
+
+}
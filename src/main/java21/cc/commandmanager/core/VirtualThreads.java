@@ -0,0 +1,29 @@
+package cc.commandmanager.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors that start a new virtual thread for every submitted task. This is the variant for Java 21 and later
+ * which is packaged in {@code META-INF/versions/21} of the multi-release jar.
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * @return whether {@linkplain #newThreadPerTaskExecutor()} creates virtual threads on this runtime
+	 */
+	static boolean areSupported() {
+		return true;
+	}
+
+	/**
+	 * @return an executor that runs every task on its own virtual thread
+	 */
+	static ExecutorService newThreadPerTaskExecutor() {
+		return Executors.newVirtualThreadPerTaskExecutor();
+	}
+
+}
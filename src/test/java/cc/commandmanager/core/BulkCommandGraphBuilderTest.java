@@ -0,0 +1,109 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cc.commandmanager.core.CommandGraph.BulkCommandGraphBuilder;
+import cc.commandmanager.core.CommandGraph.CommandGraphBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+public class BulkCommandGraphBuilderTest {
+
+	BulkCommandGraphBuilder builder;
+
+	@Before
+	public void setUp() {
+		builder = CommandGraph.bulkBuilder();
+		builder.addCommand("A", "className.A");
+		builder.addCommand("B", "className.B");
+		builder.addCommand("C", "className.C");
+	}
+
+	@Test
+	public void testBuild() {
+		assertThat(builder.addMandatoryDependency("A", "B")).isEqualTo(DependencyAdded.SUCCESSFUL);
+		assertThat(builder.addOptionalDependency("B", "C")).isEqualTo(DependencyAdded.SUCCESSFUL);
+		CommandGraph graph = builder.build().get();
+
+		CommandGraphBuilder expected = CommandGraph.builder();
+		expected.addCommand("A", "className.A");
+		expected.addCommand("B", "className.B");
+		expected.addCommand("C", "className.C");
+		expected.addMandatoryDependency("A", "B");
+		expected.addOptionalDependency("B", "C");
+		assertThat(graph).isEqualTo(expected.build());
+		assertThat(graph.topologicalOrderOfAllCommands()).containsExactly(graph.getCommandClass("C"),
+				graph.getCommandClass("B"), graph.getCommandClass("A"));
+	}
+
+	@Test
+	public void testAddCommand_duplicate() {
+		assertThat(builder.addCommand("A", "className.other")).isFalse();
+		assertThat(builder.build().get().getCommandClass("A").getClassName()).isEqualTo("className.A");
+	}
+
+	@Test
+	public void testAddDependency_commandMissing() {
+		assertThat(builder.addMandatoryDependency("A", "nowhere")).isEqualTo(DependencyAdded.COMMAND_MISSING);
+		assertThat(builder.addOptionalDependency("nowhere", "A")).isEqualTo(DependencyAdded.COMMAND_MISSING);
+	}
+
+	@Test
+	public void testAddDependency_dependencyStates() {
+		assertThat(builder.addOptionalDependency("A", "B")).isEqualTo(DependencyAdded.SUCCESSFUL);
+		assertThat(builder.addOptionalDependency("A", "B")).isEqualTo(DependencyAdded.ALREADY_PRESENT);
+		assertThat(builder.addMandatoryDependency("A", "B")).isEqualTo(DependencyAdded.OPTIONAL_OVERWRITTEN);
+		assertThat(builder.addMandatoryDependency("A", "B")).isEqualTo(DependencyAdded.ALREADY_PRESENT);
+		assertThat(builder.addOptionalDependency("A", "B")).isEqualTo(DependencyAdded.MANDATORY_NOT_OVERWRITTEN);
+
+		assertThat(builder.build().get().getMandatoryDependencies("A")).hasSize(1);
+	}
+
+	@Test
+	public void testBuild_reportsEveryCycle() {
+		builder.addCommand("D", "className.D");
+		builder.addCommand("E", "className.E");
+		builder.addCommand("F", "className.F");
+		builder.addMandatoryDependency("A", "B");
+		builder.addOptionalDependency("B", "A");
+		builder.addMandatoryDependency("C", "A");
+		builder.addMandatoryDependency("D", "E");
+		builder.addMandatoryDependency("E", "F");
+		builder.addMandatoryDependency("F", "D");
+		Try<CommandGraph> graph = builder.build();
+
+		assertThat(graph.isPresent()).isFalse();
+		List<List<String>> cycles = ((CyclicDependencyException) graph.getNote()).getCycles();
+		assertThat(cycles).containsOnly(ImmutableList.of("A", "B"), ImmutableList.of("D", "E", "F"));
+	}
+
+	@Test
+	public void testBuild_selfDependency() {
+		builder.addMandatoryDependency("A", "B");
+		builder.addMandatoryDependency("B", "B");
+		Try<CommandGraph> graph = builder.build();
+
+		assertThat(graph.isPresent()).isFalse();
+		assertThat(((CyclicDependencyException) graph.getNote()).getCycles()).containsOnly(ImmutableList.of("B"));
+	}
+
+	@Test
+	public void testBuild_longChain() {
+		BulkCommandGraphBuilder builder = CommandGraph.bulkBuilder();
+		builder.addCommand("0", "className.0");
+		for (int i = 1; i < 100000; i++) {
+			builder.addCommand(String.valueOf(i), "className." + i);
+			builder.addMandatoryDependency(String.valueOf(i - 1), String.valueOf(i));
+		}
+		CommandGraph graph = builder.build().get();
+
+		assertThat(graph.topologicalOrderOfAllCommands().get(0).getName()).isEqualTo("99999");
+		assertThat(graph.getTransitiveDependencies("99998")).containsOnly(graph.getCommandClass("99999"));
+	}
+
+}
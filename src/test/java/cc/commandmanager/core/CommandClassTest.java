@@ -2,9 +2,16 @@ package cc.commandmanager.core;
 
 import static org.fest.assertions.Assertions.assertThat;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cc.commandmanager.core.commandimplementations.DeclaredCommand;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.Lists;
+
 public class CommandClassTest {
 
 	private CommandClass command1;
@@ -61,10 +68,135 @@ public class CommandClassTest {
 		(new CommandClass("NotFound", "not.findable.Class")).newInstance();
 	}
 
+	@Test
+	public void testNewInstance_createsNewObjectEachTime() {
+		assertThat(command1.newInstance()).isNotSameAs(command1.newInstance());
+		assertThat(command1.resolveConstructor()).isSameAs(command1.resolveConstructor());
+	}
+
+	@Test
+	public void testNewInstance_failureIsKept() {
+		CommandClass notFound = new CommandClass("NotFound", "not.findable.Class");
+		Throwable first = null;
+		Throwable second = null;
+		try {
+			notFound.newInstance();
+		} catch (CommandNotInstantiableException e) {
+			first = e.getCause();
+		}
+		try {
+			notFound.newInstance();
+		} catch (CommandNotInstantiableException e) {
+			second = e.getCause();
+		}
+		assertThat(first).isInstanceOf(ClassNotFoundException.class);
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	public void testGetFactory() {
+		CommandClass declared = new CommandClass("Declared", DeclaredCommand.class.getName());
+		assertThat(declared.getFactory()).isSameAs(CommandFactory.forClassName(DeclaredCommand.class.getName()));
+		assertThat(declared.getFactory().getBeforeDependencies()).containsOnly("command");
+		assertThat(declared.getFactory().getOptionalAfterDependencies()).containsOnly("optional");
+		assertThat(declared.newInstance()).isInstanceOf(DeclaredCommand.class);
+
+		CommandClass nested = new CommandClass("Nested", NestedDeclaredCommand.class.getName());
+		assertThat(nested.getFactory().getClass().getSimpleName()).isEqualTo(
+				"CommandClassTest_NestedDeclaredCommand_CommandFactory");
+		assertThat(nested.getFactory().getAfterDependencies()).containsOnly("Command1");
+		assertThat(nested.newInstance()).isInstanceOf(NestedDeclaredCommand.class);
+
+		assertThat(command2.getFactory().getBeforeDependencies()).isEmpty();
+		assertThat(CommandFactory.forClassName(command2.getClassName())).isNull();
+	}
+
+	@Test(expected = CommandNotInstantiableException.class)
+	public void testNewInstance_noCommand() {
+		(new CommandClass("NoCommand", String.class.getName())).newInstance();
+	}
+
+	@Test
+	public void testResourceUsage() {
+		assertThat(command1.getResourceClass()).isNull();
+		assertThat(command1.getResourceWeight()).isEqualTo(CommandClass.DEFAULT_RESOURCE_WEIGHT);
+
+		CommandClass diskCommand = new CommandClass("DiskCommand", DiskCommand.class.getName());
+		assertThat(diskCommand.getResourceClass()).isEqualTo("DISK");
+		assertThat(diskCommand.getResourceWeight()).isEqualTo(2);
+
+		CommandClass declaredCommand = new CommandClass("DiskCommand", DiskCommand.class.getName(), "NETWORK", 3);
+		assertThat(declaredCommand.getResourceClass()).isEqualTo("NETWORK");
+		assertThat(declaredCommand.getResourceWeight()).isEqualTo(3);
+		assertThat(declaredCommand).isEqualTo(diskCommand);
+	}
+
+	@Test
+	public void testResourceUsage_classNotFound() {
+		assertThat(new CommandClass("NotFound", "not.findable.Class").getResourceClass()).isNull();
+	}
+
+	@Test
+	public void testFindAnnotation_isCached() {
+		CommandClass diskCommand = new CommandClass("DiskCommand", DiskCommand.class.getName());
+		assertThat(diskCommand.findAnnotation(ResourceUsage.class)).isSameAs(
+				diskCommand.findAnnotation(ResourceUsage.class));
+		assertThat(diskCommand.findAnnotation(Timeout.class)).isNull();
+
+		CommandClass notFound = new CommandClass("NotFound", "not.findable.Class");
+		assertThat(notFound.findAnnotation(ResourceUsage.class)).isNull();
+		assertThat(notFound.getTimeoutMillis()).isEqualTo(CommandClass.NO_TIMEOUT);
+	}
+
+	@Test
+	public void testLoadsCommandClassWithContextClassLoader() {
+		final List<String> requestedClasses = Lists.newArrayList();
+		ClassLoader contextClassLoader = new ClassLoader(getClass().getClassLoader()) {
+
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				requestedClasses.add(name);
+				return super.loadClass(name, resolve);
+			}
+
+		};
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(contextClassLoader);
+		try {
+			CommandClass diskCommand = new CommandClass("DiskCommand", DiskCommand.class.getName());
+			assertThat(diskCommand.findAnnotation(ResourceUsage.class)).isNotNull();
+		} finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+		assertThat(requestedClasses).contains(DiskCommand.class.getName());
+	}
+
+	@Test
+	public void testTimeout() {
+		assertThat(command1.getTimeoutMillis()).isEqualTo(CommandClass.NO_TIMEOUT);
+		assertThat(new CommandClass("Timed", TimedCommand.class.getName()).getTimeoutMillis()).isEqualTo(2000);
+		assertThat(new CommandClass("Timed", TimedCommand.class.getName(), null, 1, 100).getTimeoutMillis())
+				.isEqualTo(100);
+	}
+
 	public static class Command1 extends DummyCommand {
 
 	}
 
+	@Timeout(value = 2, unit = TimeUnit.SECONDS)
+	public static class TimedCommand extends DummyCommand {
+
+	}
+
+	@ResourceUsage(value = "DISK", weight = 2)
+	public static class DiskCommand extends DummyCommand {
+
+	}
+
+	@Dependencies(after = "Command1")
+	public static class NestedDeclaredCommand extends DummyCommand {
+	}
+
 	public static class Command2 extends DummyCommand {
 
 	}
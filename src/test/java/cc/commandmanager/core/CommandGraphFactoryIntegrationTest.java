@@ -14,6 +14,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URL;
+import java.util.List;
+
+import cc.commandmanager.core.commandimplementations.DeclaredCommand;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
@@ -119,6 +122,31 @@ public class CommandGraphFactoryIntegrationTest {
 				new CommandClass("command", "cc.commandmanager.core.commandimplementations.DummyCommand1"));
 	}
 
+	@Test
+	public void testFromXmlFile_catalogDependencies() throws IOException {
+		final File catalog = folder.newFile("catalog.xml");
+		BufferedWriter output = new BufferedWriter(new FileWriter(catalog));
+		output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n"
+				+ "<command name=\"command\" className=\"cc.commandmanager.core.commandimplementations.HeavyCommand\">\n"
+				+ "  <after/>\n</command>\n"
+				+ "<command name=\"heavy\" className=\"cc.commandmanager.core.commandimplementations.HeavyCommand\">\n"
+				+ "  <before>command</before>\n  <optionalBefore>missing</optionalBefore>\n"
+				+ "  <optionalAfter> optional </optionalAfter>\n</command>\n"
+				+ "<command name=\"optional\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand2\">\n"
+				+ "  <before/>\n</command>\n"
+				+ "</catalog>");
+		output.close();
+
+		CommandGraph graph = CommandGraph.fromXml(catalog).get();
+		assertThat(graph.getMandatoryDependencies("heavy")).containsOnly(
+				new CommandClass("command", "cc.commandmanager.core.commandimplementations.HeavyCommand"));
+		assertThat(graph.getOptionalDependencies("heavy")).isEmpty();
+		assertThat(graph.getOptionalDependencies("optional")).containsOnly(
+				new CommandClass("heavy", "cc.commandmanager.core.commandimplementations.HeavyCommand"));
+		assertThat(graph.getDependencies("command")).isEmpty();
+		assertThat(graph.getMandatoryDependencies("optional")).isEmpty();
+	}
+
 	@Test
 	public void testFromXmlFile_invalidXmlFile() throws IOException {
 		Try<CommandGraph> graph = CommandGraph.fromXml(folder.newFile("invalidXmlFile.xml"));
@@ -126,6 +154,37 @@ public class CommandGraphFactoryIntegrationTest {
 		assertThat(graph.getNote()).isInstanceOf(SAXParseException.class);
 	}
 
+	@Test
+	public void testFromXmlFile_malformedXmlFile() throws IOException {
+		final File catalog = folder.newFile("catalog.xml");
+		BufferedWriter output = new BufferedWriter(new FileWriter(catalog));
+		output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n"
+				+ "<command name=\"command\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand1\">\n"
+				+ "</catalog>");
+		output.close();
+
+		Try<CommandGraph> graph = CommandGraph.fromXml(catalog);
+		assertThat(graph.isPresent()).isFalse();
+		assertThat(graph.getNote()).isInstanceOf(SAXParseException.class);
+		assertThat(((SAXParseException) graph.getNote()).getLineNumber()).isEqualTo(4);
+	}
+
+	@Test
+	public void testFromXmlFile_missingNameAttribute() throws IOException {
+		final File catalog = folder.newFile("catalog.xml");
+		BufferedWriter output = new BufferedWriter(new FileWriter(catalog));
+		output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n"
+				+ "<command name=\"command\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand1\">\n"
+				+ "  <description><command name=\"nested\"/></description>\n</command>\n"
+				+ "<command className=\"cc.commandmanager.core.commandimplementations.DummyCommand2\"/>\n"
+				+ "</catalog>");
+		output.close();
+
+		Try<CommandGraph> graph = CommandGraph.fromXml(catalog);
+		assertThat(graph.isPresent()).isFalse();
+		assertThat(graph.getNote().toString()).contains("Name or class name missing in element").contains("line 6");
+	}
+
 	@Test
 	public void testFromDocument_illegalEqualCommandName() {
 		Document catalogDocument = createBaseCatalogDocument();
@@ -184,6 +243,107 @@ public class CommandGraphFactoryIntegrationTest {
 		assertThat(graph.getNote()).isEqualTo(DependencyAdded.COMMAND_MISSING);
 	}
 
+	@Test
+	public void testFromDocument_resourceUsage() {
+		Document catalogDocument = createBaseCatalogDocument();
+		Element documentRoot = catalogDocument.createElement("catalog");
+
+		Element command = catalogDocument.createElement("command");
+		command.setAttribute("className", "cc.commandmanager.core.commandimplementations.DummyCommand1");
+		command.setAttribute("name", "command");
+		command.setAttribute("resourceClass", "DISK");
+		command.setAttribute("resourceWeight", "4");
+		documentRoot.appendChild(command);
+		catalogDocument.appendChild(documentRoot);
+
+		CommandClass commandClass = CommandGraph.fromDocument(catalogDocument).get().getCommandClass("command");
+		assertThat(commandClass.getResourceClass()).isEqualTo("DISK");
+		assertThat(commandClass.getResourceWeight()).isEqualTo(4);
+	}
+
+	@Test
+	public void testFromDocument_invalidResourceWeight() {
+		Document catalogDocument = createBaseCatalogDocument();
+		Element documentRoot = catalogDocument.createElement("catalog");
+
+		Element command = catalogDocument.createElement("command");
+		command.setAttribute("className", "cc.commandmanager.core.commandimplementations.DummyCommand1");
+		command.setAttribute("name", "command");
+		command.setAttribute("resourceClass", "DISK");
+		command.setAttribute("resourceWeight", "heavy");
+		documentRoot.appendChild(command);
+		catalogDocument.appendChild(documentRoot);
+
+		Try<CommandGraph> graph = CommandGraph.fromDocument(catalogDocument);
+		assertThat(graph.isPresent()).isFalse();
+		assertThat(graph.getNote().toString()).contains("Resource weight is not a positive integer");
+	}
+
+	@Test
+	public void testFromDocument_timeout() {
+		Document catalogDocument = createBaseCatalogDocument();
+		Element documentRoot = catalogDocument.createElement("catalog");
+
+		Element command = catalogDocument.createElement("command");
+		command.setAttribute("className", "cc.commandmanager.core.commandimplementations.DummyCommand1");
+		command.setAttribute("name", "command");
+		command.setAttribute("timeout", "1500");
+		documentRoot.appendChild(command);
+		catalogDocument.appendChild(documentRoot);
+
+		assertThat(CommandGraph.fromDocument(catalogDocument).get().getCommandClass("command").getTimeoutMillis())
+				.isEqualTo(1500);
+	}
+
+	@Test
+	public void testFromDocument_declaredDependencies() {
+		Document catalogDocument = createBaseCatalogDocument();
+		Element documentRoot = catalogDocument.createElement("catalog");
+
+		Element command = catalogDocument.createElement("command");
+		command.setAttribute("className", "cc.commandmanager.core.commandimplementations.DummyCommand1");
+		command.setAttribute("name", "command");
+		documentRoot.appendChild(command);
+
+		Element declared = catalogDocument.createElement("command");
+		declared.setAttribute("className", DeclaredCommand.class.getName());
+		declared.setAttribute("name", "declared");
+		documentRoot.appendChild(declared);
+
+		Element optional = catalogDocument.createElement("command");
+		optional.setAttribute("className", "cc.commandmanager.core.commandimplementations.CommandWithoutAnyDependencies");
+		optional.setAttribute("name", "optional");
+		documentRoot.appendChild(optional);
+		catalogDocument.appendChild(documentRoot);
+
+		int instances = DeclaredCommand.INSTANCES.get();
+		CommandGraph graph = CommandGraph.fromDocument(catalogDocument).get();
+
+		assertThat(DeclaredCommand.INSTANCES.get()).isEqualTo(instances);
+		assertThat(graph.getMandatoryDependencies("declared")).containsOnly(
+				new CommandClass("command", "cc.commandmanager.core.commandimplementations.DummyCommand1"));
+		assertThat(graph.getOptionalDependencies("optional")).containsOnly(
+				new CommandClass("declared", DeclaredCommand.class.getName()));
+		assertThat(graph.getCommandClass("declared").newInstance()).isInstanceOf(DeclaredCommand.class);
+	}
+
+	@Test
+	public void testFromDocument_invalidTimeout() {
+		Document catalogDocument = createBaseCatalogDocument();
+		Element documentRoot = catalogDocument.createElement("catalog");
+
+		Element command = catalogDocument.createElement("command");
+		command.setAttribute("className", "cc.commandmanager.core.commandimplementations.DummyCommand1");
+		command.setAttribute("name", "command");
+		command.setAttribute("timeout", "-1");
+		documentRoot.appendChild(command);
+		catalogDocument.appendChild(documentRoot);
+
+		Try<CommandGraph> graph = CommandGraph.fromDocument(catalogDocument);
+		assertThat(graph.isPresent()).isFalse();
+		assertThat(graph.getNote().toString()).contains("Timeout is not a positive integer");
+	}
+
 	@Test
 	public void testFromDocument_missingNameAttribute() {
 		Document catalogDocument = createBaseCatalogDocument();
@@ -237,6 +397,16 @@ public class CommandGraphFactoryIntegrationTest {
 		}
 	}
 
+	@Test
+	public void testFindCycles() {
+		List<List<String>> cycles = CommandGraph.findCycles(
+				getResourceAsFile("catalog-for-circular-dependency-check.xml")).get();
+		assertThat(cycles).hasSize(1);
+		assertThat(cycles.get(0)).containsOnly("Cycle1", "Cycle2", "Cycle3");
+
+		assertThat(CommandGraph.findCycles(getResourceAsFile("catalog-with-three-commands.xml")).get()).isEmpty();
+	}
+
 	@Test
 	public void testBuilderFailsOnMissingNameAttributeInCatalog() {
 		Try<CommandGraph> optional = CommandGraph
@@ -7,6 +7,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -14,6 +15,7 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import net.sf.qualitycheck.exception.IllegalNullArgumentException;
 import net.sf.qualitycheck.exception.IllegalNullElementsException;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 
 import org.fest.assertions.Condition;
 import org.junit.Before;
@@ -92,6 +94,42 @@ public class CommandGraphTest {
 		assertThat(graph.getOptionalDependencies("C")).isEmpty();
 	}
 
+	@Test
+	public void testGetTransitiveDependencies() {
+		CommandClass commandD = new CommandClass("D", "className.D");
+		builder.addCommand(commandD);
+		builder.addMandatoryDependency("B", "D");
+		builder.addOptionalDependency("C", "D");
+		CommandGraph diamond = builder.build();
+
+		assertThat(diamond.getTransitiveDependencies("A")).containsOnly(commandB, commandC, commandD);
+		assertThat(diamond.getTransitiveDependencies("B")).containsOnly(commandD);
+		assertThat(diamond.getTransitiveDependencies("D")).isEmpty();
+	}
+
+	@Test
+	public void testGetTransitiveDependents() {
+		CommandClass commandD = new CommandClass("D", "className.D");
+		builder.addCommand(commandD);
+		builder.addMandatoryDependency("B", "D");
+		builder.addOptionalDependency("C", "D");
+		CommandGraph diamond = builder.build();
+
+		assertThat(diamond.getTransitiveDependents("D")).containsOnly(commandA, commandB, commandC);
+		assertThat(diamond.getTransitiveDependents("C")).containsOnly(commandA);
+		assertThat(diamond.getTransitiveDependents("A")).isEmpty();
+	}
+
+	@Test(expected = CommandNotFoundException.class)
+	public void testGetTransitiveDependencies_commandNotFound() {
+		graph.getTransitiveDependencies("not there");
+	}
+
+	@Test(expected = IllegalNullArgumentException.class)
+	public void testGetTransitiveDependents_nullArgument() {
+		graph.getTransitiveDependents(null);
+	}
+
 	@Test
 	public void testGetConnectedComponents() {
 		assertThat(graph.getConnectedComponents()).containsOnly(graph);
@@ -111,6 +149,179 @@ public class CommandGraphTest {
 		assertThat(graph.getConnectedComponents()).isEmpty();
 	}
 
+	@Test
+	public void testComponentOf() {
+		assertThat(graph.componentOf("B")).isSameAs(graph);
+
+		builder.addCommand("D", "className.D");
+		builder.addCommand("E", "className.E");
+		builder.addMandatoryDependency("E", "D");
+		CommandGraph biggerGraph = builder.build();
+
+		assertThat(biggerGraph.componentOf("A")).isEqualTo(graph);
+		assertThat(biggerGraph.componentOf("C")).isSameAs(biggerGraph.componentOf("A"));
+		CommandGraph component = biggerGraph.componentOf("D");
+		assertThat(component.topologicalOrderOfAllCommands()).containsExactly(biggerGraph.getCommandClass("D"),
+				biggerGraph.getCommandClass("E"));
+		assertThat(component.getMandatoryDependencies("E")).containsOnly(biggerGraph.getCommandClass("D"));
+		assertThat(biggerGraph.getConnectedComponents()).containsOnly(graph, component);
+	}
+
+	@Test
+	public void testComponentOf_manyComponents() {
+		CommandGraphBuilder builder = CommandGraph.builder();
+		for (int i = 0; i < 1000; i++) {
+			builder.addCommand("first" + i, "className.first" + i);
+			builder.addCommand("second" + i, "className.second" + i);
+			builder.addOptionalDependency("second" + i, "first" + i);
+		}
+		builder.addMandatoryDependency("first1", "second0");
+		CommandGraph graph = builder.build();
+
+		assertThat(graph.getConnectedComponents()).hasSize(999);
+		assertThat(graph.componentOf("second1").topologicalOrderOfAllCommands()).containsExactly(
+				graph.getCommandClass("first0"), graph.getCommandClass("second0"), graph.getCommandClass("first1"),
+				graph.getCommandClass("second1"));
+		assertThat(graph.componentOf("first999").getOptionalDependencies("second999")).containsOnly(
+				graph.getCommandClass("first999"));
+	}
+
+	@Test(expected = CommandNotFoundException.class)
+	public void testComponentOf_commandNotFound() {
+		graph.componentOf("not there");
+	}
+
+	@Test
+	public void testFreeze() {
+		CommandGraph frozenGraph = graph.freeze();
+
+		assertThat(graph.isFrozen()).isFalse();
+		assertThat(frozenGraph.isFrozen()).isTrue();
+		assertThat(frozenGraph).isEqualTo(graph);
+		assertThat(frozenGraph.freeze()).isSameAs(frozenGraph);
+		assertThat(frozenGraph.getDependencies("A")).containsOnly(commandB, commandC);
+		assertThat(frozenGraph.getDependencies("A")).isSameAs(frozenGraph.getDependencies("A"));
+		assertThat(frozenGraph.getMandatoryDependencies("A")).isSameAs(frozenGraph.getMandatoryDependencies("A"));
+		assertThat(frozenGraph.getOptionalDependencies("A")).containsOnly(commandC);
+	}
+
+	@Test
+	public void testBuildFrozen() {
+		builder.addCommand("D", "className.D");
+		CommandGraph frozenGraph = builder.buildFrozen();
+
+		assertThat(frozenGraph.isFrozen()).isTrue();
+		assertThat(frozenGraph).isEqualTo(builder.build());
+		assertThat(frozenGraph.getConnectedComponents()).isSameAs(frozenGraph.getConnectedComponents());
+		assertThat(frozenGraph.componentOf("D").isFrozen()).isTrue();
+		assertThat(frozenGraph.getConnectedComponents()).contains(frozenGraph.componentOf("A"),
+				frozenGraph.componentOf("D"));
+	}
+
+	@Test
+	public void testWithCommands() {
+		CommandClass commandD = new CommandClass("D", "className.D");
+		CommandGraph derived = graph.withCommands(commandD);
+
+		builder.addCommand(commandD);
+		assertThat(derived).isEqualTo(builder.build());
+		assertThat(derived.componentOf("A")).isSameAs(graph);
+		assertThat(derived.getConnectedComponents()).hasSize(2);
+		assertThat(graph.containsCommand("D")).isFalse();
+	}
+
+	@Test(expected = IllegalStateOfArgumentException.class)
+	public void testWithCommands_commandAlreadyContained() {
+		graph.withCommands(new CommandClass("A", "className.other"));
+	}
+
+	@Test
+	public void testWithoutCommands() {
+		CommandGraph derived = graph.withoutCommands("C");
+
+		CommandGraphBuilder expected = CommandGraph.builder();
+		expected.addCommand(commandA);
+		expected.addCommand(commandB);
+		expected.addMandatoryDependency("A", "B");
+		assertThat(derived).isEqualTo(expected.build());
+		assertThat(derived.topologicalOrderOfAllCommands()).containsExactly(commandB, commandA);
+		assertThat(graph.getDependencies("A")).containsOnly(commandB, commandC);
+	}
+
+	@Test
+	public void testWithoutCommands_splitsComponents() {
+		CommandGraph derived = graph.freeze().withoutCommands("A");
+
+		assertThat(derived.isFrozen()).isTrue();
+		assertThat(derived.getConnectedComponents()).hasSize(2);
+		assertThat(derived.getDependencies("B")).isEmpty();
+	}
+
+	@Test(expected = CommandNotFoundException.class)
+	public void testWithoutCommands_commandNotFound() {
+		graph.withoutCommands("not there");
+	}
+
+	@Test
+	public void testWithDependency() {
+		CommandGraph derived = graph.withDependency("B", "C", true).get();
+
+		builder.addMandatoryDependency("B", "C");
+		assertThat(derived).isEqualTo(builder.build());
+		assertThat(derived.getTransitiveDependents("C")).containsOnly(commandA, commandB);
+		List<CommandClass> ordering = derived.topologicalOrderOfAllCommands();
+		assertThat(ordering.indexOf(commandC)).isLessThan(ordering.indexOf(commandB));
+		assertThat(ordering.indexOf(commandB)).isLessThan(ordering.indexOf(commandA));
+	}
+
+	@Test
+	public void testWithDependency_reordersTopologically() {
+		CommandGraphBuilder builder = CommandGraph.builder();
+		for (int i = 0; i < 6; i++) {
+			builder.addCommand(String.valueOf(i), "className." + i);
+		}
+		builder.addMandatoryDependency("1", "0");
+		builder.addMandatoryDependency("3", "2");
+		builder.addMandatoryDependency("5", "4");
+		CommandGraph graph = builder.build();
+		List<CommandClass> ordering = graph.topologicalOrderOfAllCommands();
+		String first = ordering.get(0).getName();
+		String last = ordering.get(ordering.size() - 1).getName();
+		if (graph.getTransitiveDependents(first).contains(graph.getCommandClass(last))) {
+			last = ordering.get(ordering.size() - 2).getName();
+		}
+
+		CommandGraph derived = graph.withDependency(first, last, false).get();
+		builder.addOptionalDependency(first, last);
+		assertThat(derived).isEqualTo(builder.build());
+		ordering = derived.topologicalOrderOfAllCommands();
+		for (CommandClass command : ordering) {
+			for (CommandClass dependency : derived.getDependencies(command.getName())) {
+				assertThat(ordering.indexOf(dependency)).isLessThan(ordering.indexOf(command));
+			}
+		}
+		assertThat(derived.getConnectedComponents()).hasSize(graph.getConnectedComponents().size() - 1);
+	}
+
+	@Test
+	public void testWithDependency_overwritesOptional() {
+		CommandGraph frozenGraph = graph.freeze();
+		CommandGraph derived = frozenGraph.withDependency("A", "C", true).get();
+
+		assertThat(derived.isFrozen()).isTrue();
+		assertThat(derived.getMandatoryDependencies("A")).containsOnly(commandB, commandC);
+		assertThat(derived.getOptionalDependencies("A")).isEmpty();
+		assertThat(frozenGraph.getOptionalDependencies("A")).containsOnly(commandC);
+		assertThat(derived.withDependency("A", "C", false).get()).isSameAs(derived);
+	}
+
+	@Test
+	public void testWithDependency_failures() {
+		assertThat(graph.withDependency("B", "A", true).getNote()).isEqualTo(DependencyAdded.CYCLE_DETECTED);
+		assertThat(graph.withDependency("A", "A", false).getNote()).isEqualTo(DependencyAdded.CYCLE_DETECTED);
+		assertThat(graph.withDependency("A", "nowhere", true).getNote()).isEqualTo(DependencyAdded.COMMAND_MISSING);
+	}
+
 	@Test
 	public void testToDot() {
 		assertThat(graph.toDot())
@@ -333,4 +544,57 @@ public class CommandGraphTest {
 		assertThat(smallGraph.hashCode()).isNotEqualTo(bigGraph.hashCode());
 	}
 
+	@Test
+	public void testEquals_differentDependencyType() {
+		CommandGraphBuilder optionalBuilder = CommandGraph.builder();
+		optionalBuilder.addCommand(commandA);
+		optionalBuilder.addCommand(commandB);
+		optionalBuilder.addCommand(commandC);
+		optionalBuilder.addOptionalDependency("A", "B");
+		optionalBuilder.addOptionalDependency("A", "C");
+
+		assertThat(graph.equals(optionalBuilder.build())).isFalse();
+	}
+
+	@Test
+	public void testFromTopologicalOrdering() {
+		BitSet mandatory = new BitSet();
+		mandatory.set(0);
+		CommandGraph restored = CommandGraph.fromTopologicalOrdering(ImmutableList.of(commandB, commandC, commandA),
+				new int[] { 0, 0, 0, 2 }, new int[] { 0, 1 }, mandatory);
+
+		assertThat(restored).isEqualTo(graph);
+		assertThat(restored.topologicalOrderOfAllCommands()).containsExactly(commandB, commandC, commandA);
+	}
+
+	@Test(expected = IllegalStateOfArgumentException.class)
+	public void testFromTopologicalOrdering_dependencyAfterDependent() {
+		CommandGraph.fromTopologicalOrdering(ImmutableList.of(commandA, commandB), new int[] { 0, 0, 1 },
+				new int[] { 1 }, new BitSet());
+	}
+
+	@Test
+	public void testTopologicalOrderOfGivenCommands_largeGraph() {
+		CommandGraphBuilder chainBuilder = CommandGraph.builder();
+		for (int command = 0; command < 100; command++) {
+			chainBuilder.addCommand("C" + command, "className.C" + command);
+			if (command > 0) {
+				chainBuilder.addMandatoryDependency("C" + command, "C" + (command - 1));
+			}
+		}
+		CommandGraph chain = chainBuilder.build();
+
+		assertThat(chain.topologicalOrderOfNames("C70", "C3", "C70", "C41")).containsExactly(
+				chain.getCommandClass("C3"), chain.getCommandClass("C41"), chain.getCommandClass("C70"));
+
+		List<String> reversedNames = Lists.newArrayList();
+		for (int command = 99; command >= 0; command -= 2) {
+			reversedNames.add("C" + command);
+		}
+		List<CommandClass> order = chain.topologicalOrderOfNames(reversedNames);
+		assertThat(order).hasSize(50);
+		assertThat(order.get(0)).isEqualTo(chain.getCommandClass("C1"));
+		assertThat(order.get(49)).isEqualTo(chain.getCommandClass("C99"));
+	}
+
 }
@@ -3,18 +3,38 @@ package cc.commandmanager.core;
 import static cc.commandmanager.testutils.Assertions.assertThatExecution;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
 import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import cc.commandmanager.core.CommandGraph.CommandGraphBuilder;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class CommandManagerTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private CommandManager commandManager;
 
 	@Before
@@ -169,6 +189,781 @@ public class CommandManagerTest {
 		CommandManager.executeCommands(new CommandGraphBuilder().build());
 	}
 
+	@Test
+	public void testParallelExecutionStartsIndependentCommandsConcurrently() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Left", AwaitingCommand.class.getName());
+		builder.addCommand("Right", AwaitingCommand.class.getName());
+		builder.addCommand("Joined", SuccessfulCommand.class.getName());
+		builder.addMandatoryDependency("Joined", "Left");
+		builder.addOptionalDependency("Joined", "Right");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Context context = new Context();
+			context.bind(AwaitingCommand.LATCH, new CountDownLatch(2));
+			ComposedResultState result = CommandManager.builder(builder.build()).executor(executor).build()
+					.executeAllCommands(context);
+
+			assertThatExecution(result).isCompletedSuccessfully();
+			assertThat(result.getExecutedCommands()).hasSize(3);
+			assertThat(result.getExecutedCommands().get(2)).isEqualTo(
+					new CommandClass("Joined", SuccessfulCommand.class.getName()));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParallelExecutionAbortsOnFailure() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Success", SuccessfulCommand.class.getName());
+		builder.addCommand("Failure", FailingCommand.class.getName());
+		builder.addCommand("Warning", WarningCommand.class.getName());
+		builder.addMandatoryDependency("Failure", "Success");
+		builder.addMandatoryDependency("Warning", "Failure");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			assertThat(CommandManager.builder(builder.build()).executor(executor).build().executeAllCommands()
+					.getResultStates()).containsExactly(ResultState.success(), ResultState.failure("Fail!"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParallelExecutionWithParallelismOfOneRespectsGraphOrder() {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertThat(CommandManager.builder(commandManager.getCommandGraph()).executor(executor).parallelism(1)
+					.build().executeAllCommands().getResultStates()).containsExactly(ResultState.success(),
+					ResultState.warning("Warning!"), ResultState.failure("Fail!"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testParallelExecutionPassesOnExceptions() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Throwing", ThrowingCommand.class.getName());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CommandManager.builder(builder.build()).executor(executor).build().executeAllCommands();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParallelExecutionOfConnectedComponents() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Left", AwaitingCommand.class.getName());
+		builder.addCommand("Left failure", FailingCommand.class.getName());
+		builder.addCommand("Left dependent", SuccessfulCommand.class.getName());
+		builder.addCommand("Right", AwaitingCommand.class.getName());
+		builder.addCommand("Right dependent", SuccessfulCommand.class.getName());
+		builder.addCommand("Unrelated", FailingCommand.class.getName());
+		builder.addMandatoryDependency("Left failure", "Left");
+		builder.addMandatoryDependency("Left dependent", "Left failure");
+		builder.addMandatoryDependency("Right dependent", "Right");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Context context = new Context();
+			context.bind(AwaitingCommand.LATCH, new CountDownLatch(2));
+			ComposedResultState result = CommandManager.builder(builder.build()).executor(executor).build()
+					.executeConnectedComponentsContaining(ImmutableList.of("Left", "Right dependent"), context);
+
+			assertThat(result.isFailure()).isTrue();
+			assertThat(result.getExecutedCommands()).containsOnly(
+					new CommandClass("Left", AwaitingCommand.class.getName()),
+					new CommandClass("Left failure", FailingCommand.class.getName()),
+					new CommandClass("Right", AwaitingCommand.class.getName()),
+					new CommandClass("Right dependent", SuccessfulCommand.class.getName()));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testParallelExecutionRespectsResourceLimits() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		for (int command = 0; command < 6; command++) {
+			builder.addCommand(new CommandClass("Disk" + command, ConcurrencyRecordingCommand.class.getName(), "DISK",
+					command % 2 + 1));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		try {
+			Context context = new Context();
+			context.bind(ConcurrencyRecordingCommand.RUNNING, new AtomicInteger());
+			context.bind(ConcurrencyRecordingCommand.MAXIMUM, new AtomicInteger());
+			assertThatExecution(CommandManager.builder(builder.build()).executor(executor).resourceLimit("DISK", 2)
+					.build().executeAllCommands(context)).isCompletedSuccessfully();
+			assertThat(context.get(ConcurrencyRecordingCommand.MAXIMUM, AtomicInteger.class).get()).isEqualTo(2);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testExecuteAllCommandsForManyContexts() {
+		List<ComposedResultState> results = commandManager.executeAllCommands(
+				ImmutableList.of(new Context(), new Context()), 2);
+		assertThat(results).hasSize(2);
+		assertThat(results.get(0).getResultStates()).containsExactly(ResultState.success(),
+				ResultState.warning("Warning!"), ResultState.failure("Fail!"));
+		assertThat(results.get(1)).isEqualTo(results.get(0));
+	}
+
+	@Test
+	public void testPipelinedExecutionProcessesContextsConcurrently() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Awaiting", AwaitingCommand.class.getName());
+		builder.addCommand("Success", SuccessfulCommand.class.getName());
+		builder.addMandatoryDependency("Success", "Awaiting");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CountDownLatch latch = new CountDownLatch(2);
+			List<Context> contexts = Lists.newArrayList();
+			for (int context = 0; context < 2; context++) {
+				contexts.add(new Context());
+				contexts.get(context).bind(AwaitingCommand.LATCH, latch);
+			}
+			List<ComposedResultState> results = CommandManager.builder(builder.build()).executor(executor).build()
+					.executeAllCommands(contexts, 2);
+
+			assertThat(results).hasSize(2);
+			for (ComposedResultState result : results) {
+				assertThatExecution(result).isCompletedSuccessfully();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPipelinedExecutionRespectsMaxContextsInFlight() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Recording", ConcurrencyRecordingCommand.class.getName());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maximum = new AtomicInteger();
+			List<Context> contexts = Lists.newArrayList();
+			for (int context = 0; context < 6; context++) {
+				contexts.add(new Context());
+				contexts.get(context).bind(ConcurrencyRecordingCommand.RUNNING, running);
+				contexts.get(context).bind(ConcurrencyRecordingCommand.MAXIMUM, maximum);
+			}
+			assertThat(CommandManager.builder(builder.build()).executor(executor).build()
+					.executeAllCommands(contexts, 1)).hasSize(6);
+			assertThat(maximum.get()).isEqualTo(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testPipelinedExecutionPassesOnExceptions() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Throwing", ThrowingCommand.class.getName());
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CommandManager.builder(builder.build()).executor(executor).build()
+					.executeAllCommands(ImmutableList.of(new Context(), new Context(), new Context()), 2);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testIncrementalExecutionSkipsUpToDateCommands() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Doubling", DoublingCommand.class.getName());
+		builder.addCommand("Incrementing", IncrementingCommand.class.getName());
+		builder.addMandatoryDependency("Incrementing", "Doubling");
+		CommandManager incremental = CommandManager.builder(builder.build()).incremental(
+				new InMemoryFingerprintStore()).build();
+		executions.set(0);
+
+		Context context = new Context();
+		context.bind(DoublingCommand.INPUT, 1);
+		assertThatExecution(incremental.executeAllCommands(context)).isCompletedSuccessfully();
+		assertThat(executions.get()).isEqualTo(2);
+
+		Context unchanged = new Context();
+		unchanged.bind(DoublingCommand.INPUT, 1);
+		assertThatExecution(incremental.executeAllCommands(unchanged)).isCompletedSuccessfully();
+		assertThat(executions.get()).isEqualTo(2);
+		assertThat(unchanged).isEqualTo(context);
+
+		Context changed = new Context();
+		changed.bind(DoublingCommand.INPUT, 2);
+		assertThatExecution(incremental.executeAllCommands(changed)).isCompletedSuccessfully();
+		assertThat(executions.get()).isEqualTo(4);
+		assertThat(changed.getInteger(IncrementingCommand.RESULT)).isEqualTo(5);
+	}
+
+	@Test
+	public void testIncrementalExecutionReexecutesDependentsOfChangedCommands() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Doubling", DoublingCommand.class.getName());
+		builder.addCommand("Counting", CountingCommand.class.getName());
+		builder.addMandatoryDependency("Counting", "Doubling");
+		CommandManager incremental = CommandManager.builder(builder.build()).incremental(
+				new InMemoryFingerprintStore()).build();
+		executions.set(0);
+
+		Context context = new Context();
+		context.bind(DoublingCommand.INPUT, 1);
+		incremental.executeAllCommands(context);
+		Context changed = new Context();
+		changed.bind(DoublingCommand.INPUT, 2);
+		incremental.executeAllCommands(changed);
+
+		// the counting command does not read anything, but its dependency changed
+		assertThat(executions.get()).isEqualTo(4);
+		assertThat(changed.getInteger(DoublingCommand.DOUBLED)).isEqualTo(4);
+	}
+
+	@Test
+	public void testIncrementalExecutionFingerprintsContentInsteadOfHashCodes() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Reading", ReadingCommand.class.getName());
+		CommandManager incremental = CommandManager.builder(builder.build()).incremental(
+				new InMemoryFingerprintStore()).build();
+		executions.set(0);
+
+		assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+		for (Object input : ImmutableList.of("Aa", "BB", "BB")) {
+			Context context = new Context();
+			context.bind(DoublingCommand.INPUT, input);
+			incremental.executeAllCommands(context);
+		}
+		assertThat(executions.get()).isEqualTo(2);
+
+		// values that cannot be serialized are never considered unchanged
+		for (int i = 0; i < 2; i++) {
+			Context context = new Context();
+			context.bind(DoublingCommand.INPUT, Thread.currentThread());
+			incremental.executeAllCommands(context);
+		}
+		assertThat(executions.get()).isEqualTo(4);
+	}
+
+	@Test
+	public void testIncrementalExecutionOfCommandCopyingTheContext() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Copying", CopyingCommand.class.getName());
+		CommandManager incremental = CommandManager.builder(builder.build()).incremental(
+				new InMemoryFingerprintStore()).build();
+		executions.set(0);
+
+		Context context = new Context();
+		context.bind(DoublingCommand.INPUT, 1);
+		assertThatExecution(incremental.executeAllCommands(context)).isCompletedSuccessfully();
+		assertThat(context.getInteger(DoublingCommand.DOUBLED)).isEqualTo(2);
+
+		Context unchanged = new Context();
+		unchanged.bind(DoublingCommand.INPUT, 1);
+		incremental.executeAllCommands(unchanged);
+		assertThat(executions.get()).isEqualTo(1);
+
+		// the copy reads the input, so changing it re-executes the command
+		Context changed = new Context();
+		changed.bind(DoublingCommand.INPUT, 3);
+		assertThatExecution(incremental.executeAllCommands(changed)).isCompletedSuccessfully();
+		assertThat(executions.get()).isEqualTo(2);
+		assertThat(changed.getInteger(DoublingCommand.DOUBLED)).isEqualTo(6);
+	}
+
+	@Test
+	public void testCachedResultsAreBoundInsteadOfExecuting() throws IOException {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Cached", CachedDoublingCommand.class.getName());
+		builder.addCommand("Incrementing", IncrementingCommand.class.getName());
+		builder.addMandatoryDependency("Incrementing", "Cached");
+		Path directory = folder.newFolder("results").toPath();
+		executions.set(0);
+
+		for (int run = 0; run < 2; run++) {
+			CommandManager cached = CommandManager.builder(builder.build()).resultCache(
+					new DiskResultCache(directory, 1024 * 1024)).build();
+			Context context = new Context();
+			context.bind(DoublingCommand.INPUT, 1);
+			assertThatExecution(cached.executeAllCommands(context)).isCompletedSuccessfully();
+			assertThat(context.getInteger(IncrementingCommand.RESULT)).isEqualTo(3);
+		}
+		// the incrementing command is not cacheable
+		assertThat(executions.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void testResumeContinuesWithFailedCommand() throws IOException {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Doubling", DoublingCommand.class.getName());
+		builder.addCommand("Flaky", FlakyCommand.class.getName());
+		builder.addCommand("Incrementing", IncrementingCommand.class.getName());
+		builder.addMandatoryDependency("Flaky", "Doubling");
+		builder.addMandatoryDependency("Incrementing", "Flaky");
+		CheckpointStore checkpoints = new FileCheckpointStore(folder.newFile().toPath());
+		CommandManager checkpointing = CommandManager.builder(builder.build()).checkpoints(checkpoints).build();
+		executions.set(0);
+
+		FlakyCommand.failing = true;
+		Context context = new Context();
+		context.bind(DoublingCommand.INPUT, 1);
+		assertThat(checkpointing.executeAllCommands(context).isFailure()).isTrue();
+		assertThat(checkpoints.load().get().getCompletedCommands()).containsOnly("Doubling");
+
+		FlakyCommand.failing = false;
+		Context resumed = new Context();
+		ComposedResultState resultState = checkpointing.resume(resumed);
+
+		assertThatExecution(resultState).isCompletedSuccessfully();
+		assertThat(resultState.getExecutedCommands()).hasSize(3);
+		assertThat(executions.get()).isEqualTo(2);
+		assertThat(resumed.getInteger(IncrementingCommand.RESULT)).isEqualTo(3);
+		assertThat(checkpoints.load().isPresent()).isFalse();
+	}
+
+	@Test(expected = IllegalStateOfArgumentException.class)
+	public void testResume_noCheckpointStore() {
+		commandManager.resume();
+	}
+
+	@Test
+	public void testCheckpointsRejectBatchWithFailingContext() throws IOException {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Doubling", DoublingCommand.class.getName());
+		builder.addCommand("Flaky", FlakyCommand.class.getName());
+		builder.addMandatoryDependency("Flaky", "Doubling");
+		CheckpointStore checkpoints = new FileCheckpointStore(folder.newFile().toPath());
+		CommandManager checkpointing = CommandManager.builder(builder.build()).checkpoints(checkpoints).build();
+
+		FlakyCommand.failing = true;
+		Context failing = new Context();
+		failing.bind(DoublingCommand.INPUT, 1);
+		assertThat(checkpointing.executeAllCommands(failing).isFailure()).isTrue();
+		Checkpoint checkpoint = checkpoints.load().get();
+
+		Context first = new Context();
+		first.bind(DoublingCommand.INPUT, 2);
+		Context second = new Context();
+		second.bind(DoublingCommand.INPUT, 3);
+		try {
+			checkpointing.executeAllCommands(ImmutableList.of(first, second), 2);
+			fail("Batch was executed although checkpoints are enabled.");
+		} catch (IllegalStateOfArgumentException e) {
+			// expected
+		}
+		assertThat(first.containsKey(DoublingCommand.DOUBLED)).isFalse();
+		assertThat(checkpoints.load().get().getBindings()).isEqualTo(checkpoint.getBindings());
+	}
+
+	@Test
+	public void testCheckpointsRejectOverlappingExecutions() throws IOException {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Awaiting", AwaitingCommand.class.getName());
+		CheckpointStore checkpoints = new FileCheckpointStore(folder.newFile().toPath());
+		CommandManager checkpointing = CommandManager.builder(builder.build()).checkpoints(checkpoints).build();
+		CountDownLatch latch = new CountDownLatch(2);
+		Context context = new Context();
+		context.bind(AwaitingCommand.LATCH, latch);
+
+		CompletableFuture<ComposedResultState> running = checkpointing.executeAllCommandsAsync(context);
+		try {
+			checkpointing.executeAllCommandsAsync(new Context());
+			fail("Overlapping execution was started although checkpoints are enabled.");
+		} catch (IllegalStateOfArgumentException e) {
+			// expected
+		} finally {
+			latch.countDown();
+		}
+		assertThatExecution(running.join()).isCompletedSuccessfully();
+
+		context.rebind(AwaitingCommand.LATCH, new CountDownLatch(1));
+		assertThatExecution(checkpointing.executeAllCommands(context)).isCompletedSuccessfully();
+	}
+
+	@Test
+	public void testContinueOnFailureSkipsOnlyDependents() {
+		CommandGraph graph = continueOnFailureGraph();
+		ComposedResultState result = CommandManager.builder(graph).continueOnFailure().build().executeAllCommands();
+
+		assertThat(result.isFailure()).isTrue();
+		assertThat(result.getExecutedCommands()).containsOnly(graph.getCommandClass("Failure"),
+				graph.getCommandClass("Unrelated"), graph.getCommandClass("Unrelated dependent"));
+		assertThat(result.getSkippedCommands()).containsOnly(graph.getCommandClass("Dependent"),
+				graph.getCommandClass("Transitive dependent"));
+	}
+
+	@Test
+	public void testParallelContinueOnFailureSkipsOnlyDependents() {
+		CommandGraph graph = continueOnFailureGraph();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ComposedResultState result = CommandManager.builder(graph).executor(executor).continueOnFailure().build()
+					.executeAllCommands();
+
+			assertThat(result.getExecutedCommands()).hasSize(3);
+			assertThat(result.getSkippedCommands()).containsOnly(graph.getCommandClass("Dependent"),
+					graph.getCommandClass("Transitive dependent"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CommandGraph continueOnFailureGraph() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Failure", FailingCommand.class.getName());
+		builder.addCommand("Dependent", SuccessfulCommand.class.getName());
+		builder.addCommand("Transitive dependent", SuccessfulCommand.class.getName());
+		builder.addCommand("Unrelated", WarningCommand.class.getName());
+		builder.addCommand("Unrelated dependent", SuccessfulCommand.class.getName());
+		builder.addOptionalDependency("Dependent", "Failure");
+		builder.addMandatoryDependency("Transitive dependent", "Dependent");
+		builder.addMandatoryDependency("Transitive dependent", "Unrelated");
+		builder.addMandatoryDependency("Unrelated dependent", "Unrelated");
+		return builder.build();
+	}
+
+	@Test
+	public void testTimeoutAbortsHungCommand() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Hung", HungCommand.class.getName());
+		builder.addCommand("Dependent", SuccessfulCommand.class.getName());
+		builder.addMandatoryDependency("Dependent", "Hung");
+
+		ComposedResultState result = new CommandManager(builder.build()).executeAllCommands();
+		assertThat(result.isFailure()).isTrue();
+		assertThat(result.getCause()).isInstanceOf(TimeoutException.class);
+		assertThat(result.getExecutedCommands()).hasSize(1);
+	}
+
+	@Test
+	public void testTimeoutCancelsCommand() throws InterruptedException {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand(new CommandClass("Cancellable", CancellableCommand.class.getName(), null, 1, 20));
+		builder.addCommand("Independent", SuccessfulCommand.class.getName());
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Context context = new Context();
+			context.bind(CancellableCommand.CANCELLED, new CountDownLatch(1));
+			ComposedResultState result = CommandManager.builder(builder.build()).executor(executor)
+					.continueOnFailure().build().executeAllCommands(context);
+
+			assertThat(result.getResultStates()).hasSize(2);
+			assertThat(result.isFailure()).isTrue();
+			assertThat(context.get(CancellableCommand.CANCELLED, CountDownLatch.class).await(10, TimeUnit.SECONDS))
+					.isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRetryOfTransientlyFailingCommand() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Transient", TransientlyFailingCommand.class.getName());
+		Context context = new Context();
+		context.bind(TransientlyFailingCommand.FAILURES, new AtomicInteger(2));
+
+		ComposedResultState result = new CommandManager(builder.build()).executeAllCommands(context);
+		assertThatExecution(result).isCompletedSuccessfully();
+		assertThat(result.getFailedAttempts().get(builder.build().getCommandClass("Transient"))).hasSize(2);
+	}
+
+	@Test
+	public void testParallelRetryDoesNotBlockOtherCommands() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Transient", TransientlyFailingCommand.class.getName());
+		builder.addCommand("Independent", SuccessfulCommand.class.getName());
+		CommandGraph graph = builder.build();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Context context = new Context();
+			context.bind(TransientlyFailingCommand.FAILURES, new AtomicInteger(5));
+			ComposedResultState result = CommandManager.builder(graph).executor(executor).build()
+					.executeAllCommands(context);
+
+			assertThat(result.isFailure()).isTrue();
+			assertThat(result.getFailedAttempts().get(graph.getCommandClass("Transient"))).hasSize(2);
+			// the independent command finished while the transient command was backing off
+			assertThat(result.getExecutedCommands()).containsExactly(graph.getCommandClass("Independent"),
+					graph.getCommandClass("Transient"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testAbortDuringBackoffPreventsRetry() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Failing", FailingCommand.class.getName());
+		builder.addCommand("Transient", TransientlyFailingCommand.class.getName());
+		CommandGraph graph = builder.build();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Context context = new Context();
+			AtomicInteger failures = new AtomicInteger(5);
+			context.bind(TransientlyFailingCommand.FAILURES, failures);
+			ComposedResultState result = CommandManager.builder(graph).executor(executor).parallelism(1).build()
+					.executeAllCommands(context);
+
+			// the failing command used the slot of the transient command while it was backing off
+			assertThat(result.getExecutedCommands()).containsExactly(graph.getCommandClass("Failing"),
+					graph.getCommandClass("Transient"));
+			assertThat(result.getResultStates().get(1).isFailure()).isTrue();
+			assertThat(result.getFailedAttempts().isEmpty()).isTrue();
+			assertThat(failures.get()).isEqualTo(4);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRetryPolicyOfBuilder() {
+		ComposedResultState result = CommandManager.builder(commandManager.getCommandGraph())
+				.retryPolicy(RetryPolicy.builder().maxAttempts(2).backoff(0, 1).build()).build().executeAllCommands();
+		assertThat(result.getFailedAttempts().values()).containsOnly(ResultState.failure("Fail!"));
+	}
+
+	@Test
+	public void testExecuteAllCommandsAsync() {
+		assertThat(commandManager.executeAllCommandsAsync().join().getResultStates()).containsExactly(
+				ResultState.success(), ResultState.warning("Warning!"), ResultState.failure("Fail!"));
+	}
+
+	@Test
+	public void testExecuteCommandsAsyncCanBeChained() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final CommandManager parallelManager = CommandManager.builder(commandManager.getCommandGraph())
+					.executor(executor).build();
+			ComposedResultState result = parallelManager.executeCommandsAsync("Success").thenCompose(
+					new Function<ComposedResultState, CompletableFuture<ComposedResultState>>() {
+
+						@Override
+						public CompletableFuture<ComposedResultState> apply(ComposedResultState previous) {
+							return parallelManager.executeCommandsGracefullyAsync("Warning");
+						}
+
+					}).join();
+
+			assertThat(result.getResultStates()).containsExactly(ResultState.success(),
+					ResultState.warning("Warning!"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = CommandNotFoundException.class)
+	public void testExecuteCommandsAsync_commandNotFound() {
+		commandManager.executeCommandsAsync("Missing");
+	}
+
+	@Test
+	public void testExecuteAllCommandsAsyncCompletesExceptionally() {
+		CommandGraphBuilder builder = new CommandGraphBuilder();
+		builder.addCommand("Throwing", ThrowingCommand.class.getName());
+
+		CompletableFuture<ComposedResultState> result = new CommandManager(builder.build()).executeAllCommandsAsync();
+		try {
+			result.join();
+			fail("Exception thrown by command was not passed on.");
+		} catch (CompletionException e) {
+			assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+		}
+	}
+
+	public static class AwaitingCommand extends SimpleCommand {
+
+		public static final String LATCH = "latch";
+
+		@Override
+		public ResultState execute(Context context) {
+			CountDownLatch latch = context.get(LATCH, CountDownLatch.class);
+			latch.countDown();
+			try {
+				if (!latch.await(10, TimeUnit.SECONDS)) {
+					return ResultState.failure("Independent command was not executed concurrently.");
+				}
+			} catch (InterruptedException e) {
+				return ResultState.failure(e);
+			}
+			return ResultState.success();
+		}
+
+	}
+
+	/**
+	 * Records the maximum number of concurrently running instances of this command weighted by their resource weight,
+	 * which is 1 or 2 depending on the parity of the command name.
+	 */
+	public static class ConcurrencyRecordingCommand extends SimpleCommand {
+
+		public static final String RUNNING = "running";
+		public static final String MAXIMUM = "maximum";
+
+		@Override
+		public ResultState execute(Context context) {
+			AtomicInteger running = context.get(RUNNING, AtomicInteger.class);
+			AtomicInteger maximum = context.get(MAXIMUM, AtomicInteger.class);
+			synchronized (maximum) {
+				maximum.set(Math.max(maximum.get(), running.incrementAndGet()));
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				return ResultState.failure(e);
+			} finally {
+				running.decrementAndGet();
+			}
+			return ResultState.success();
+		}
+
+	}
+
+	private static final AtomicInteger executions = new AtomicInteger();
+
+	public static class DoublingCommand extends SimpleCommand {
+
+		public static final String INPUT = "input";
+		public static final String DOUBLED = "doubled";
+
+		@Override
+		public ResultState execute(Context context) {
+			executions.incrementAndGet();
+			context.bind(DOUBLED, context.getInteger(INPUT) * 2);
+			return ResultState.success();
+		}
+
+	}
+
+	@Cacheable(inputs = DoublingCommand.INPUT)
+	public static class CachedDoublingCommand extends DoublingCommand {
+
+	}
+
+	public static class IncrementingCommand extends SimpleCommand {
+
+		public static final String RESULT = "result";
+
+		@Override
+		public ResultState execute(Context context) {
+			executions.incrementAndGet();
+			context.bind(RESULT, context.getInteger(DoublingCommand.DOUBLED) + 1);
+			return ResultState.success();
+		}
+
+	}
+
+	public static class ReadingCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			executions.incrementAndGet();
+			context.get(DoublingCommand.INPUT);
+			return ResultState.success();
+		}
+
+	}
+
+	public static class CopyingCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			executions.incrementAndGet();
+			Context copy = new Context(context);
+			context.bind(DoublingCommand.DOUBLED, copy.getInteger(DoublingCommand.INPUT) * 2);
+			return ResultState.success();
+		}
+
+	}
+
+	public static class CountingCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			executions.incrementAndGet();
+			return ResultState.success();
+		}
+
+	}
+
+	public static class FlakyCommand extends SimpleCommand {
+
+		private static volatile boolean failing;
+
+		@Override
+		public ResultState execute(Context context) {
+			return failing ? ResultState.failure("Flaky!") : ResultState.success();
+		}
+
+	}
+
+	@Timeout(value = 20, unit = TimeUnit.MILLISECONDS)
+	public static class HungCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			Uninterruptibles.sleepUninterruptibly(10, TimeUnit.SECONDS);
+			return ResultState.success();
+		}
+
+	}
+
+	public static class CancellableCommand extends SimpleCommand {
+
+		public static final String CANCELLED = "cancelled";
+
+		@Override
+		public ResultState execute(Context context) {
+			CancellationToken token = CancellationToken.current();
+			while (!token.isCancellationRequested()) {
+				Thread.yield();
+			}
+			context.get(CANCELLED, CountDownLatch.class).countDown();
+			return ResultState.success();
+		}
+
+	}
+
+	@Retry(maxAttempts = 3, initialDelayMillis = 50, retryOn = IOException.class)
+	public static class TransientlyFailingCommand extends SimpleCommand {
+
+		public static final String FAILURES = "failures";
+
+		@Override
+		public ResultState execute(Context context) {
+			if (context.get(FAILURES, AtomicInteger.class).getAndDecrement() > 0) {
+				return ResultState.failure(new IOException("Connection refused"));
+			}
+			return ResultState.success();
+		}
+
+	}
+
+	public static class ThrowingCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			throw new IllegalStateException("Thrown!");
+		}
+
+	}
+
 	public static class SuccessfulCommand extends SimpleCommand {
 
 		@Override
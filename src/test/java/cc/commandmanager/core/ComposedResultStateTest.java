@@ -32,6 +32,32 @@ public class ComposedResultStateTest {
 		assertSuccess(result);
 	}
 
+	@Test
+	public void testConcat() {
+		CommandClass otherCommand = new CommandClass("other command", "command.class");
+		ComposedResultState result = ComposedResultState.concat(ImmutableList.of(
+				new ComposedResultState(ImmutableList.of(success, warning), ImmutableList.of(command, command)),
+				new ComposedResultState(ImmutableList.of(failure), ImmutableList.of(otherCommand), ImmutableList
+						.of(command))));
+
+		assertThat(result.getResultStates()).containsExactly(success, warning, failure);
+		assertThat(result.getExecutedCommands()).containsExactly(command, command, otherCommand);
+		assertThat(result.getSkippedCommands()).containsExactly(command);
+		assertFailure(result);
+	}
+
+	@Test
+	public void testEquals_skippedCommands() {
+		CommandClass otherCommand = new CommandClass("other command", "command.class");
+		ComposedResultState result = new ComposedResultState(ImmutableList.of(failure), ImmutableList.of(command),
+				ImmutableList.of(otherCommand));
+
+		assertThat(result).isEqualTo(
+				new ComposedResultState(ImmutableList.of(failure), ImmutableList.of(command), ImmutableList
+						.of(otherCommand)));
+		assertThat(result).isNotEqualTo(new ComposedResultState(ImmutableList.of(failure), ImmutableList.of(command)));
+	}
+
 	@Test
 	public void testGetOverallResultState_warning_successAndWarning() {
 		ComposedResultState result = new ComposedResultState(ImmutableList.of(success, warning), ImmutableList.of(
@@ -0,0 +1,95 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cc.commandmanager.core.CommandGraph.CommandGraphBuilder;
+
+/**
+ * Commands are dependent on each other as follows:
+ * <ul>
+ * <li>Long2 (mandatory) -> Long1
+ * <li>Long3 (optional) -> Long2
+ * <li>Short1 and Short2 do not have any dependencies
+ * </ul>
+ */
+public class CriticalPathFirstTest {
+
+	private CommandGraph graph;
+	private DurationStore durations;
+
+	@Before
+	public void setUp() {
+		CommandGraphBuilder builder = CommandGraph.builder();
+		builder.addCommand("Short1", DummyCommand.class.getName());
+		builder.addCommand("Short2", DummyCommand.class.getName());
+		builder.addCommand("Long1", DummyCommand.class.getName());
+		builder.addCommand("Long2", DummyCommand.class.getName());
+		builder.addCommand("Long3", DummyCommand.class.getName());
+		builder.addMandatoryDependency("Long2", "Long1");
+		builder.addOptionalDependency("Long3", "Long2");
+		graph = builder.build();
+
+		durations = new InMemoryDurationStore(1);
+		for (CommandClass command : graph.topologicalOrderOfAllCommands()) {
+			durations.record(command, 10);
+		}
+		durations.record(graph.getCommandClass("Short1"), 40);
+		durations.record(graph.getCommandClass("Short2"), 0);
+	}
+
+	@Test
+	public void testPrioritizeByBottomLevel() {
+		List<CommandClass> commands = graph.topologicalOrderOfAllCommands();
+		long[] priorities = new CriticalPathFirst(durations).prioritize(graph, commands);
+
+		assertThat(priorities[commands.indexOf(graph.getCommandClass("Long1"))]).isEqualTo(30);
+		assertThat(priorities[commands.indexOf(graph.getCommandClass("Long2"))]).isEqualTo(20);
+		assertThat(priorities[commands.indexOf(graph.getCommandClass("Long3"))]).isEqualTo(10);
+		assertThat(priorities[commands.indexOf(graph.getCommandClass("Short1"))]).isEqualTo(40);
+		assertThat(priorities[commands.indexOf(graph.getCommandClass("Short2"))]).isEqualTo(0);
+	}
+
+	@Test
+	public void testPrioritizeIgnoresCommandsNotExecuted() {
+		List<CommandClass> commands = graph.topologicalOrderOfNames("Long1", "Long2");
+		long[] priorities = new CriticalPathFirst(durations).prioritize(graph, commands);
+
+		assertThat(priorities).isEqualTo(new long[] { 20, 10 });
+	}
+
+	@Test
+	public void testUnknownDurationsAreEstimatedByAverage() {
+		DurationStore durations = new InMemoryDurationStore();
+		durations.record(graph.getCommandClass("Long1"), 40);
+		durations.record(graph.getCommandClass("Long2"), 20);
+		List<CommandClass> commands = graph.topologicalOrderOfNames("Long1", "Long2", "Long3");
+
+		assertThat(new CriticalPathFirst(durations).prioritize(graph, commands)).isEqualTo(new long[] { 90, 50, 30 });
+	}
+
+	@Test
+	public void testExecutionStartsCriticalPathFirst() {
+		CommandManager commandManager = CommandManager.builder(graph).criticalPathFirst(durations).build();
+
+		assertThat(commandManager.executeAllCommands().getExecutedCommands()).containsExactly(
+				graph.getCommandClass("Short1"), graph.getCommandClass("Long1"), graph.getCommandClass("Long2"),
+				graph.getCommandClass("Long3"), graph.getCommandClass("Short2"));
+	}
+
+	@Test
+	public void testInMemoryDurationStoreAveragesDurations() {
+		DurationStore durations = new InMemoryDurationStore(0.5);
+		CommandClass command = new CommandClass("command", DummyCommand.class.getName());
+		assertThat(durations.getDuration(command).isPresent()).isFalse();
+
+		durations.record(command, 100);
+		durations.record(command, 50);
+		assertThat(durations.getDuration(command).get()).isEqualTo(75);
+	}
+
+}
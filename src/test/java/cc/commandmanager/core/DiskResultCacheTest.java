@@ -0,0 +1,80 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+public class DiskResultCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CommandClass command = new CommandClass("Command", DummyCommand.class.getName());
+	private final Map<String, Object> inputs = ImmutableMap.<String, Object> of("input", 1);
+	private final Map<Object, Object> outputs = ImmutableMap.<Object, Object> of("output", "value");
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder("cache").toPath();
+	}
+
+	@Test
+	public void testLookup() {
+		DiskResultCache cache = new DiskResultCache(directory, 1024 * 1024);
+		assertThat(cache.lookup(command, inputs).isPresent()).isFalse();
+
+		cache.store(command, inputs, outputs);
+		assertThat(cache.lookup(command, inputs).get()).isEqualTo(outputs);
+		assertThat(cache.lookup(command, ImmutableMap.<String, Object> of("input", 2)).isPresent()).isFalse();
+		assertThat(cache.lookup(new CommandClass("Other", DummyCommand.class.getName()), inputs).isPresent())
+				.isFalse();
+	}
+
+	@Test
+	public void testLookupAfterRestart() {
+		new DiskResultCache(directory, 1024 * 1024).store(command, inputs, outputs);
+		assertThat(new DiskResultCache(directory, 1024 * 1024).lookup(command, inputs).get()).isEqualTo(outputs);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		DiskResultCache cache = new DiskResultCache(directory, 1024 * 1024);
+		cache.store(command, inputs, outputs);
+		long entrySize = cache.size();
+
+		cache = new DiskResultCache(directory, 2 * entrySize);
+		cache.store(command, ImmutableMap.<String, Object> of("input", 2), outputs);
+		cache.lookup(command, inputs);
+		cache.store(command, ImmutableMap.<String, Object> of("input", 3), outputs);
+
+		assertThat(cache.size()).isEqualTo(2 * entrySize);
+		assertThat(cache.lookup(command, inputs).isPresent()).isTrue();
+		assertThat(cache.lookup(command, ImmutableMap.<String, Object> of("input", 2)).isPresent()).isFalse();
+		assertThat(cache.lookup(command, ImmutableMap.<String, Object> of("input", 3)).isPresent()).isTrue();
+		assertThat(Files.list(directory).count()).isEqualTo(2);
+	}
+
+	@Test
+	public void testUnreadableEntryIsAMiss() throws IOException {
+		DiskResultCache cache = new DiskResultCache(directory, 1024 * 1024);
+		cache.store(command, inputs, outputs);
+		for (Path file : Files.newDirectoryStream(directory)) {
+			Files.write(file, new byte[] { 1, 2, 3 });
+		}
+
+		assertThat(cache.lookup(command, inputs).isPresent()).isFalse();
+		assertThat(cache.size()).isEqualTo(0);
+	}
+
+}
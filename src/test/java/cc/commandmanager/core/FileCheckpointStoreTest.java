@@ -0,0 +1,57 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class FileCheckpointStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final CommandClass command1 = new CommandClass("Command1", DummyCommand.class.getName());
+	private final CommandClass command2 = new CommandClass("Command2", DummyCommand.class.getName());
+	private FileCheckpointStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		store = new FileCheckpointStore(folder.getRoot().toPath().resolve("checkpoint"));
+	}
+
+	@Test
+	public void testSaveAndLoad() {
+		assertThat(store.load().isPresent()).isFalse();
+
+		store.save(Checkpoint.of(ImmutableList.of(command1, command2), ImmutableMap.<Object, Object> of("input", 1))
+				.completed(command1, ResultState.warning("Warning!"), ImmutableMap.<Object, Object> of("output", 2)));
+
+		Checkpoint checkpoint = new FileCheckpointStore(folder.getRoot().toPath().resolve("checkpoint")).load().get();
+		assertThat(checkpoint.getCommands()).containsExactly("Command1", "Command2");
+		assertThat(checkpoint.getCompletedCommands()).containsOnly("Command1");
+		assertThat(checkpoint.getResultState("Command1")).isEqualTo(ResultState.warning("Warning!"));
+		assertThat(checkpoint.getBindings()).isEqualTo(ImmutableMap.<Object, Object> of("input", 1, "output", 2));
+	}
+
+	@Test
+	public void testNonSerializableBindingsAreDropped() {
+		store.save(Checkpoint.of(ImmutableList.of(command1), ImmutableMap.<Object, Object> of("input", 1, "context",
+				new Context())));
+		assertThat(store.load().get().getBindings()).isEqualTo(ImmutableMap.<Object, Object> of("input", 1));
+	}
+
+	@Test
+	public void testClear() {
+		store.save(Checkpoint.of(ImmutableList.of(command1), ImmutableMap.<Object, Object> of()));
+		store.clear();
+		assertThat(store.load().isPresent()).isFalse();
+	}
+
+}
@@ -0,0 +1,117 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cc.commandmanager.core.commandimplementations.HeavyCommand;
+
+public class GraphSnapshotTest {
+
+	private static final String CATALOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<catalog>\n"
+			+ "<command name=\"command\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand1\"/>\n"
+			+ "<command name=\"command2\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand2\"/>\n"
+			+ "<command name=\"command3\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand3\" "
+			+ "resourceClass=\"DISK\" resourceWeight=\"2\" timeout=\"500\"/>\n"
+			+ "<command name=\"command4\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand4\"/>\n"
+			+ "<command name=\"command5\" className=\"cc.commandmanager.core.commandimplementations.DummyCommand5\"/>\n"
+			+ "<command name=\"heavy\" className=\"cc.commandmanager.core.commandimplementations.HeavyCommand\">\n"
+			+ "  <before>command</before>\n</command>\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File catalog;
+	private File snapshot;
+
+	@Before
+	public void setUp() throws IOException {
+		catalog = folder.newFile("catalog.xml");
+		Files.write(catalog.toPath(), (CATALOG + "</catalog>").getBytes(StandardCharsets.UTF_8));
+		snapshot = new File(folder.getRoot(), "catalog.snapshot");
+	}
+
+	@Test
+	public void testRestore() throws IOException {
+		CommandGraph graph = CommandGraph.fromXml(catalog, snapshot).get();
+		assertThat(snapshot.exists()).isTrue();
+		long written = snapshot.lastModified();
+
+		CommandGraph restored = GraphSnapshot.read(snapshot.toPath(), catalog).get();
+		assertThat(restored).isEqualTo(graph);
+		assertThat(restored.topologicalOrderOfAllCommands()).isEqualTo(graph.topologicalOrderOfAllCommands());
+		assertThat(restored.getMandatoryDependencies("heavy")).containsOnly(graph.getCommandClass("command"));
+		assertThat(restored.getOptionalDependencies("command")).isEqualTo(graph.getOptionalDependencies("command"));
+		assertThat(restored.getCommandClass("command3").getResourceClass()).isEqualTo("DISK");
+		assertThat(restored.getCommandClass("command3").getResourceWeight()).isEqualTo(2);
+		assertThat(restored.getCommandClass("command3").getTimeoutMillis()).isEqualTo(500);
+
+		assertThat(CommandGraph.fromXml(catalog, snapshot).get()).isEqualTo(graph);
+		assertThat(snapshot.lastModified()).isEqualTo(written);
+	}
+
+	@Test
+	public void testRestore_touchedCatalog() throws IOException {
+		CommandGraph graph = CommandGraph.fromXml(catalog, snapshot).get();
+		assertThat(catalog.setLastModified(catalog.lastModified() - 10000)).isTrue();
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).get()).isEqualTo(graph);
+
+		// the snapshot now records the modification time of the touched catalog
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(snapshot.toPath()));
+		assertThat(header.getLong(8)).isEqualTo(catalog.lastModified());
+		assertThat(header.getLong(16)).isEqualTo(catalog.length());
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).get()).isEqualTo(graph);
+	}
+
+	@Test
+	public void testOutdatedSnapshot() throws IOException {
+		CommandGraph.fromXml(catalog, snapshot).get();
+		Files.write(catalog.toPath(), (CATALOG + "<command name=\"command6\" "
+				+ "className=\"cc.commandmanager.core.commandimplementations.CommandWithoutAnyDependencies\"/>\n"
+				+ "</catalog>").getBytes(StandardCharsets.UTF_8));
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).isPresent()).isFalse();
+
+		assertThat(CommandGraph.fromXml(catalog, snapshot).get().containsCommand("command6")).isTrue();
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).get().containsCommand("command6")).isTrue();
+	}
+
+	@Test
+	public void testCorruptSnapshot() throws IOException {
+		CommandGraph graph = CommandGraph.fromXml(catalog, snapshot).get();
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+		Files.write(snapshot.toPath(), java.util.Arrays.copyOf(bytes, bytes.length / 2));
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).isPresent()).isFalse();
+
+		assertThat(CommandGraph.fromXml(catalog, snapshot).get()).isEqualTo(graph);
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).isPresent()).isTrue();
+	}
+
+	@Test
+	public void testCorruptDependency() throws IOException {
+		CommandGraph.fromXml(catalog, snapshot).get();
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+		// the last dependency is followed by whether it is mandatory only
+		ByteBuffer.wrap(bytes).putInt(bytes.length - 5, 1000);
+		Files.write(snapshot.toPath(), bytes);
+		Try<CommandGraph> restored = GraphSnapshot.read(snapshot.toPath(), catalog);
+		assertThat(restored.isPresent()).isFalse();
+		assertThat(restored.getNote()).isEqualTo("Corrupt snapshot " + snapshot.toPath());
+	}
+
+	@Test
+	public void testRestoreDoesNotInstantiateCommands() {
+		CommandGraph.fromXml(catalog, snapshot).get();
+		assertThat(HeavyCommand.instantiable).isFalse();
+		assertThat(GraphSnapshot.read(snapshot.toPath(), catalog).get().containsCommand("heavy")).isTrue();
+	}
+
+}
@@ -0,0 +1,62 @@
+package cc.commandmanager.core;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+	private final RetryPolicy policy = RetryPolicy.builder().maxAttempts(3).backoff(100, 2).maxDelay(300).jitter(0)
+			.retryOn(IOException.class).build();
+
+	@Test
+	public void testShouldRetry() {
+		ResultState transientFailure = ResultState.failure(new IOException("Connection refused"));
+		assertThat(policy.shouldRetry(transientFailure, 1)).isTrue();
+		assertThat(policy.shouldRetry(transientFailure, 2)).isTrue();
+		assertThat(policy.shouldRetry(transientFailure, 3)).isFalse();
+	}
+
+	@Test
+	public void testShouldRetry_onlyFailuresWithGivenCause() {
+		assertThat(policy.shouldRetry(ResultState.success(), 1)).isFalse();
+		assertThat(policy.shouldRetry(ResultState.warning("Warning!", new IOException("Slow!")), 1)).isFalse();
+		assertThat(policy.shouldRetry(ResultState.failure("Fail!"), 1)).isFalse();
+		assertThat(policy.shouldRetry(ResultState.failure(new IllegalStateException("Illegal!")), 1)).isFalse();
+	}
+
+	@Test
+	public void testShouldRetry_anyCause() {
+		assertThat(RetryPolicy.builder().maxAttempts(2).build().shouldRetry(ResultState.failure("Fail!"), 1)).isTrue();
+	}
+
+	@Test
+	public void testNone() {
+		assertThat(RetryPolicy.NONE.shouldRetry(ResultState.failure("Fail!"), 1)).isFalse();
+	}
+
+	@Test
+	public void testDelayMillis() {
+		assertThat(policy.delayMillis(1)).isEqualTo(100);
+		assertThat(policy.delayMillis(2)).isEqualTo(200);
+		assertThat(policy.delayMillis(3)).isEqualTo(300);
+	}
+
+	@Test
+	public void testDelayMillis_jitter() {
+		RetryPolicy jittered = RetryPolicy.builder().maxAttempts(2).backoff(100, 1).jitter(0.5).build();
+		for (int attempt = 1; attempt < 100; attempt++) {
+			assertThat(jittered.delayMillis(attempt)).isGreaterThanOrEqualTo(50).isLessThanOrEqualTo(100);
+		}
+	}
+
+	@Test(expected = IllegalStateOfArgumentException.class)
+	public void testInvalidJitter() {
+		RetryPolicy.builder().jitter(2);
+	}
+
+}
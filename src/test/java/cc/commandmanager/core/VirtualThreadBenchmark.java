@@ -0,0 +1,122 @@
+package cc.commandmanager.core;
+
+import static cc.commandmanager.testutils.Assertions.assertThatExecution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import cc.commandmanager.core.CommandGraph.CommandGraphBuilder;
+import cc.commandmanager.testutils.Benchmark;
+
+/**
+ * Compares execution on virtual threads with execution on a fixed thread pool using a synthetic catalog of I/O-bound
+ * commands. The catalog consists of {@value #LAYERS} layers of {@value #WIDTH} commands each. Every command depends on
+ * one command of the previous layer and blocks for {@value #BLOCKING_MILLIS} ms.
+ * <p>
+ * Tests run against the compiled classes rather than the multi-release jar, so the Java 21 variant of
+ * {@linkplain VirtualThreads} is not available here. The virtual thread executor is therefore created reflectively, and
+ * the benchmark is skipped on runtimes without virtual threads. Results are logged at level INFO.
+ */
+@Category(Benchmark.class)
+public class VirtualThreadBenchmark {
+
+	private static final Logger logger = Logger.getLogger(VirtualThreadBenchmark.class);
+
+	private static final int LAYERS = 5;
+	private static final int WIDTH = 2000;
+	private static final int BLOCKING_MILLIS = 20;
+	private static final int FIXED_POOL_SIZE = 64;
+	private static final int RUNS = 3;
+
+	private static CommandGraph graph;
+
+	@BeforeClass
+	public static void buildCatalog() {
+		CommandGraphBuilder builder = CommandGraph.builder();
+		for (int layer = 0; layer < LAYERS; layer++) {
+			for (int command = 0; command < WIDTH; command++) {
+				builder.addCommand(name(layer, command), BlockingCommand.class.getName());
+				if (layer > 0) {
+					builder.addMandatoryDependency(name(layer, command), name(layer - 1, command));
+				}
+			}
+		}
+		graph = builder.build();
+	}
+
+	private static String name(int layer, int command) {
+		return layer + "-" + command;
+	}
+
+	@Test
+	public void benchmarkFixedThreadPool() {
+		ExecutorService executor = Executors.newFixedThreadPool(FIXED_POOL_SIZE);
+		try {
+			measure("Fixed thread pool (" + FIXED_POOL_SIZE + " threads)", CommandManager.builder(graph)
+					.executor(executor).build());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void benchmarkVirtualThreads() throws ReflectiveOperationException {
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		Assume.assumeNotNull(executor);
+		try {
+			measure("Virtual threads", CommandManager.builder(graph).executor(executor).build());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return an executor starting a virtual thread for every task, or {@code null} if this runtime does not support
+	 *         virtual threads
+	 */
+	@Nullable
+	private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			logger.warn("Virtual threads are not supported by this Java runtime. Skipping benchmark.");
+			return null;
+		}
+	}
+
+	private static void measure(String mode, CommandManager commandManager) {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < RUNS; run++) {
+			long startTime = System.nanoTime();
+			assertThatExecution(commandManager.executeAllCommands(new Context())).isCompletedSuccessfully();
+			best = Math.min(best, System.nanoTime() - startTime);
+		}
+		logger.info(String.format("%s: %d commands in %d ms (best of %d runs)", mode, LAYERS * WIDTH,
+				TimeUnit.NANOSECONDS.toMillis(best), RUNS));
+	}
+
+	public static class BlockingCommand extends SimpleCommand {
+
+		@Override
+		public ResultState execute(Context context) {
+			try {
+				Thread.sleep(BLOCKING_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return ResultState.failure(e);
+			}
+			return ResultState.success();
+		}
+
+	}
+
+}
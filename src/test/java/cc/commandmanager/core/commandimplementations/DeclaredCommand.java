@@ -0,0 +1,42 @@
+package cc.commandmanager.core.commandimplementations;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cc.commandmanager.core.Context;
+import cc.commandmanager.core.Dependencies;
+import cc.commandmanager.core.ResultState;
+import cc.commandmanager.core.SimpleCommand;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Dummy {@link cc.commandmanager.core.Command} implementation declaring a before dependency on "command" and an
+ * optional after dependency on "optional" with the {@link Dependencies} annotation. It counts how often it is
+ * instantiated.
+ */
+@Dependencies(before = "command", optionalAfter = "optional")
+public final class DeclaredCommand extends SimpleCommand {
+
+	public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	public DeclaredCommand() {
+		INSTANCES.incrementAndGet();
+	}
+
+	@Override
+	public ResultState execute(Context context) {
+		return ResultState.success();
+	}
+
+	@Override
+	public Set<String> getBeforeDependencies() {
+		return Sets.newHashSet("command");
+	}
+
+	@Override
+	public Set<String> getOptionalAfterDependencies() {
+		return Sets.newHashSet("optional");
+	}
+
+}
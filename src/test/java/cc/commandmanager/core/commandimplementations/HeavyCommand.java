@@ -0,0 +1,36 @@
+package cc.commandmanager.core.commandimplementations;
+
+import java.util.Set;
+
+import cc.commandmanager.core.Context;
+import cc.commandmanager.core.ResultState;
+import cc.commandmanager.core.SimpleCommand;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Dummy {@link cc.commandmanager.core.Command} implementation standing for a command with an expensive constructor. It
+ * fails to be instantiated unless {@link #instantiable} is set, so that tests can verify that loading a catalog with
+ * declared dependencies does not instantiate it.
+ */
+public final class HeavyCommand extends SimpleCommand {
+
+	public static volatile boolean instantiable = false;
+
+	public HeavyCommand() {
+		if (!instantiable) {
+			throw new IllegalStateException("HeavyCommand must not be instantiated");
+		}
+	}
+
+	@Override
+	public ResultState execute(Context context) {
+		return ResultState.success();
+	}
+
+	@Override
+	public Set<String> getBeforeDependencies() {
+		return Sets.newHashSet("command");
+	}
+
+}
@@ -0,0 +1,9 @@
+package cc.commandmanager.testutils;
+
+/**
+ * JUnit category of long running benchmarks. Benchmarks are excluded from the default build. Run them with
+ * {@code mvn test -Dexclude.test.groups= -Dtest=<benchmark class>}.
+ */
+public interface Benchmark {
+
+}